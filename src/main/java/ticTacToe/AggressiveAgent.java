@@ -12,5 +12,13 @@ public class AggressiveAgent extends Agent {
 	{
 		super(new AggressivePolicy());
 	}
+	
+	/**
+	 * @param rng where the random moves come from
+	 */
+	public AggressiveAgent(Rng rng)
+	{
+		super(new AggressivePolicy(rng));
+	}
 
 }
@@ -2,7 +2,6 @@ package ticTacToe;
 
 
 import java.util.List;
-import java.util.Random;
 /**
  * An agrgessive policy: if there is a winning move given a game state (Game object) then this policy finds it. Otherwise returns a
  * random available move.
@@ -12,30 +11,38 @@ import java.util.Random;
  */
 public class AggressivePolicy extends Policy {
 	
+	final Rng r;
+	
+	public AggressivePolicy()
+	{
+		this(new Rng());
+	}
+	
+	/**
+	 * @param r where the random moves come from
+	 */
+	public AggressivePolicy(Rng r)
+	{
+		this.r=r;
+	}
 	
 	public Move getMove(Game g) {
 		
 		
 		List<Move> moves=g.getPossibleMoves();
 		
+		// moves are tried in place and taken back, so only a shared game needs copying
+		Game work=g.shared ? g.clone() : g;
 		for(Move m:moves)
 		{
+			work.makeMove(m);
+			int resulting=work.getState();
+			work.unmakeMove(m);
 			
-			Game resulting=null;
-			try{
-				resulting=g.simulateMove(m);
-			}
-			catch(IllegalMoveException e)
-			{
-				System.out.println(e.getMessage());
-				e.printStackTrace();
-			}
-			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
+			if (resulting==Game.X_WON||resulting==Game.O_WON)
 				return m;
 		}
 		
-		Random r=new Random();
-		
 		return moves.get(r.nextInt(moves.size()));
 		
 	}
@@ -0,0 +1,64 @@
+package ticTacToe;
+
+/**
+ * Solves the {@link TTTMDP} exactly in a single pass. The games form a DAG ordered by the number of pieces on the board,
+ * so instead of sweeping until the values settle this backs up each state once, after all the states it can lead to:
+ * see {@link CompiledMDP#solve(double)}. The values and the {@link Policy} are the ones value iteration converges to.
+ * 
+ * @author ae187
+ *
+ */
+public class BackwardInductionAgent extends ValueIterationAgent
+{
+	
+	/**
+	 * This constructor trains the agent offline first and sets its policy
+	 */
+	public BackwardInductionAgent()
+	{
+		this(new TTTMDP(), 0.9, false);
+	}
+	
+	public BackwardInductionAgent(double discountFactor)
+	{
+		this(new TTTMDP(), discountFactor, false);
+	}
+	
+	/**
+	 * @param mdp
+	 * @param discountFactor
+	 */
+	public BackwardInductionAgent(TTTMDP mdp, double discountFactor)
+	{
+		this(mdp, discountFactor, false);
+	}
+	
+	/**
+	 * @param mdp
+	 * @param discountFactor
+	 * @param symmetric if true, solve over canonical games only. See {@link #symmetric}.
+	 */
+	public BackwardInductionAgent(TTTMDP mdp, double discountFactor, boolean symmetric)
+	{
+		super((Policy) null);
+		this.mdp=mdp;
+		this.discount=discountFactor;
+		this.symmetric=symmetric;
+		initValues();
+		train();
+	}
+	
+	/**
+	 * Computes the exact value of each reachable state into {@link #valueFunction}, with one backup per state.
+	 */
+	@Override
+	public void iterate()
+	{
+		CompiledMDP model=mdp.compile(symmetric);
+		storeValues(model, model.solve(discount));
+		// a single pass, after which no backup would change anything
+		sweeps=1;
+		residual=0;
+	}
+	
+}
@@ -0,0 +1,264 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shape of an m,n,k-game board: {@link #rows} by {@link #cols} cells, won by getting {@link #k} in a row
+ * horizontally, vertically or diagonally. Ordinary Tic Tac Toe is {@link #STANDARD}, 3 by 3 with 3 in a row.
+ *
+ * Cell (x, y) is numbered {@code x*cols+y}, and a set of cells is a long bit mask, so boards can have at most 64 cells
+ * (and at most 8 rows and 8 columns, the largest coordinates a {@link Move} can hold). All the winning lines are
+ * generated up front as masks.
+ *
+ * @author ae187
+ *
+ */
+public class BoardShape {
+
+	/**
+	 * The ordinary 3x3 Tic Tac Toe board.
+	 */
+	public static final BoardShape STANDARD = new BoardShape(3, 3, 3);
+
+	public final int rows;
+	public final int cols;
+
+	/**
+	 * the number of pieces in a row needed to win
+	 */
+	public final int k;
+
+	/**
+	 * rows*cols
+	 */
+	public final int cells;
+
+	/**
+	 * A mask of all the cells.
+	 */
+	final long full;
+
+	/**
+	 * All the winning lines as cell masks: horizontal lines first, then vertical ones, then the diagonals going down to
+	 * the right, then the ones going down to the left. On the standard board this is the order the game has always
+	 * checked lines in.
+	 */
+	final long[] lines;
+
+	/**
+	 * linesThrough[c] are the winning lines that contain cell c
+	 */
+	final long[][] linesThrough;
+
+	/**
+	 * cellWeight[c] is the base 3 place value of cell c in {@link Game#hashCode()}: cell 0 is the most significant digit
+	 * and the last digit is whose turn it is. On boards with more than 19 cells the weights wrap around, so the hash is no
+	 * longer unique.
+	 */
+	final int[] cellWeight;
+
+	/**
+	 * On boards of up to {@link #TABLE_CELLS} cells, hasLine[mask] is true when the cells in mask contain a full winning
+	 * line, so that evaluating a board is a single lookup. Null on larger boards.
+	 */
+	private final boolean[] hasLine;
+
+	/**
+	 * On boards of up to {@link #TABLE_CELLS} cells, maskWeight[mask] is the sum of {@link #cellWeight} over the cells in
+	 * mask. Null on larger boards.
+	 */
+	private final int[] maskWeight;
+
+	/**
+	 * The largest board that gets lookup tables indexed by cell mask.
+	 */
+	static final int TABLE_CELLS = 16;
+
+	/**
+	 * @param rows
+	 * @param cols
+	 * @param k
+	 *            the number in a row needed to win
+	 */
+	public BoardShape(int rows, int cols, int k) {
+		if (rows < 1 || rows > 8 || cols < 1 || cols > 8)
+			throw new IllegalArgumentException("A board has between 1 and 8 rows and columns");
+		if (k < 1 || k > Math.max(rows, cols))
+			throw new IllegalArgumentException("k should be between 1 and the length of the board");
+
+		this.rows = rows;
+		this.cols = cols;
+		this.k = k;
+		this.cells = rows * cols;
+		this.full = cells == 64 ? -1L : (1L << cells) - 1;
+
+		// direction (dx, dy) of the lines: horizontal, vertical, diagonal, anti-diagonal
+		int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { -1, 1 } };
+		List<Long> found = new ArrayList<Long>();
+		for (int[] d : directions) {
+			// the anti-diagonals start from the bottom row, so that they are listed in
+			// the same order as before on the standard board
+			for (int x = 0; x < rows; x++)
+				for (int y = 0; y < cols; y++) {
+					int sx = d[0] < 0 ? rows - 1 - x : x;
+					int ex = sx + d[0] * (k - 1);
+					int ey = y + d[1] * (k - 1);
+					if (ex < 0 || ex >= rows || ey >= cols)
+						continue;
+					long line = 0;
+					for (int i = 0; i < k; i++)
+						line |= bit(sx + d[0] * i, y + d[1] * i);
+					if (!found.contains(line))
+						found.add(line);
+				}
+		}
+		lines = new long[found.size()];
+		for (int i = 0; i < lines.length; i++)
+			lines[i] = found.get(i);
+
+		linesThrough = new long[cells][];
+		for (int c = 0; c < cells; c++) {
+			List<Long> through = new ArrayList<Long>();
+			for (long line : lines)
+				if ((line & (1L << c)) != 0)
+					through.add(line);
+			linesThrough[c] = new long[through.size()];
+			for (int i = 0; i < through.size(); i++)
+				linesThrough[c][i] = through.get(i);
+		}
+
+		cellWeight = new int[cells];
+		int weight = 3;
+		for (int c = cells - 1; c >= 0; c--) {
+			cellWeight[c] = weight;
+			weight *= 3;
+		}
+
+		if (cells <= TABLE_CELLS) {
+			hasLine = new boolean[1 << cells];
+			maskWeight = new int[1 << cells];
+			for (int mask = 1; mask < hasLine.length; mask++) {
+				int lowest = Integer.numberOfTrailingZeros(mask);
+				maskWeight[mask] = maskWeight[mask & (mask - 1)] + cellWeight[lowest];
+				for (long line : linesThrough[lowest])
+					if ((mask & line) == line) {
+						hasLine[mask] = true;
+						break;
+					}
+				// a line through a higher cell than the lowest one is already known
+				hasLine[mask] |= hasLine[mask & (mask - 1)];
+			}
+		} else {
+			hasLine = null;
+			maskWeight = null;
+		}
+	}
+
+	/**
+	 * @return the bit of cell (x, y)
+	 */
+	long bit(int x, int y) {
+		return 1L << (x * cols + y);
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return the number of cell (x, y)
+	 */
+	public int cell(int x, int y) {
+		return x * cols + y;
+	}
+
+	/**
+	 * @param m
+	 * @return the cell played by move m
+	 */
+	public int cell(Move m) {
+		return m.x * cols + m.y;
+	}
+
+	/**
+	 * @param who
+	 *            'X' or 'O'
+	 * @param cell
+	 * @return the shared move of {@code who} on {@code cell}
+	 */
+	public Move move(char who, int cell) {
+		return Move.of(who, cell / cols, cell % cols);
+	}
+
+	/**
+	 * @return true if (x, y) is on the board
+	 */
+	public boolean contains(int x, int y) {
+		return x >= 0 && x < rows && y >= 0 && y < cols;
+	}
+
+	/**
+	 * @param bits
+	 *            a cell mask
+	 * @return true if the cells in {@code bits} contain a full winning line
+	 */
+	boolean hasLine(long bits) {
+		if (hasLine != null)
+			return hasLine[(int) bits];
+		for (long line : lines)
+			if ((bits & line) == line)
+				return true;
+		return false;
+	}
+
+	/**
+	 * {@link #hasLine(long)} for a mask that has just had {@code cell} added to it. If there was no line before, only the
+	 * lines through {@code cell} need to be checked.
+	 * 
+	 * @param bits
+	 *            a cell mask containing {@code cell}
+	 * @param cell
+	 * @return true if the cells in {@code bits} contain a full winning line
+	 */
+	boolean hasLineThrough(long bits, int cell) {
+		if (hasLine != null)
+			return hasLine[(int) bits];
+		for (long line : linesThrough[cell])
+			if ((bits & line) == line)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the board part of {@link Game#hashCode()} for these bitboards
+	 */
+	int boardHash(long xBits, long oBits) {
+		if (maskWeight != null)
+			return maskWeight[(int) xBits] + 2 * maskWeight[(int) oBits];
+		int hash = 0;
+		for (long bits = xBits; bits != 0; bits &= bits - 1)
+			hash += cellWeight[Long.numberOfTrailingZeros(bits)];
+		for (long bits = oBits; bits != 0; bits &= bits - 1)
+			hash += 2 * cellWeight[Long.numberOfTrailingZeros(bits)];
+		return hash;
+	}
+
+	@Override
+	public int hashCode() {
+		return (rows * 9 + cols) * 9 + k;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof BoardShape))
+			return false;
+		BoardShape other = (BoardShape) obj;
+		return rows == other.rows && cols == other.cols && k == other.k;
+	}
+
+	public String toString() {
+		return rows + "x" + cols + ", " + k + " in a row";
+	}
+
+}
@@ -0,0 +1,371 @@
+package ticTacToe;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The {@link TTTMDP} compiled into flat arrays, for dynamic programming without creating any objects. Get one with
+ * {@link TTTMDP#compile()}.
+ *
+ * States are {@link StateCatalog} ids. The actions of state s are numbered {@code firstAction(s)} to
+ * {@code endAction(s)-1}, one for each cell X can play there, and the transitions of action a are numbered
+ * {@code firstTransition(a)} to {@code endTransition(a)-1}. Transition t goes to state {@code next(t)} with probability
+ * {@code prob(t)} and reward {@code reward(t)}, exactly as in {@link TTTMDP#generateTransitions(Game, Move)}. Only
+ * states where it's X's turn have actions.
+ *
+ * A symmetric model (see {@link Symmetry}) has transitions into canonical states only, so that it can be solved over the
+ * canonical states alone.
+ *
+ * @author ae187
+ *
+ */
+public class CompiledMDP {
+
+	final StateCatalog catalog;
+
+	/**
+	 * true if transitions lead to canonical states only
+	 */
+	final boolean symmetric;
+
+	/**
+	 * The states of the MDP in order of id: the states where it's X's turn, or that are over. Only canonical ones in a
+	 * symmetric model.
+	 */
+	private final int[] states;
+
+	/**
+	 * The actions of state s are actionStart[s] to actionStart[s+1]-1
+	 */
+	private final int[] actionStart;
+
+	/**
+	 * actionCell[a] is the cell X plays in action a
+	 */
+	private final byte[] actionCell;
+
+	/**
+	 * The transitions of action a are transitionStart[a] to transitionStart[a+1]-1
+	 */
+	private final int[] transitionStart;
+
+	private final int[] next;
+	private final double[] prob;
+	private final double[] reward;
+
+	/**
+	 * The number of states a {@link Sweep} task backs up itself rather than splitting further
+	 */
+	static final int SWEEP_GRAIN = 512;
+
+	CompiledMDP(TTTMDP mdp, boolean symmetric) {
+		this.catalog = mdp.getCatalog();
+		this.symmetric = symmetric && catalog.getShape().equals(BoardShape.STANDARD);
+		Symmetry symmetry = this.symmetric ? Symmetry.get() : null;
+		int size = catalog.size();
+
+		// count first, so that the arrays are allocated once
+		int numStates = 0;
+		long numActions = 0;
+		long numTransitions = 0;
+		for (int id = 0; id < size; id++) {
+			if (!isState(id, symmetry))
+				continue;
+			numStates++;
+			if (!catalog.isXsTurn(id))
+				continue;
+			for (long free = catalog.legalMoves(id); free != 0; free &= free - 1) {
+				int after = catalog.successor(id, Long.numberOfTrailingZeros(free));
+				numActions++;
+				numTransitions += catalog.isTerminal(after) ? 1 : Long.bitCount(catalog.legalMoves(after));
+			}
+		}
+		if (numTransitions > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException("The " + catalog.getShape() + " board has too many transitions to compile");
+
+		states = new int[numStates];
+		actionStart = new int[size + 1];
+		actionCell = new byte[(int) numActions];
+		transitionStart = new int[(int) numActions + 1];
+		next = new int[(int) numTransitions];
+		prob = new double[(int) numTransitions];
+		reward = new double[(int) numTransitions];
+
+		int s = 0;
+		int a = 0;
+		int t = 0;
+		for (int id = 0; id < size; id++) {
+			actionStart[id] = a;
+			if (!isState(id, symmetry))
+				continue;
+			states[s++] = id;
+			if (!catalog.isXsTurn(id))
+				continue;
+
+			for (long free = catalog.legalMoves(id); free != 0; free &= free - 1) {
+				int cell = Long.numberOfTrailingZeros(free);
+				int after = catalog.successor(id, cell);
+				actionCell[a] = (byte) cell;
+				transitionStart[a] = t;
+				a++;
+
+				// X won or drew: the game is over, nothing for the opponent to do.
+				if (catalog.isTerminal(after)) {
+					next[t] = canonical(after, symmetry);
+					prob[t] = 1.0;
+					reward[t] = mdp.reward(catalog.status(after));
+					t++;
+					continue;
+				}
+
+				// equal chance that the opponent will move into any of the available places.
+				long replies = catalog.legalMoves(after);
+				double p = (double) 1 / Long.bitCount(replies);
+				for (; replies != 0; replies &= replies - 1) {
+					int reached = catalog.successor(after, Long.numberOfTrailingZeros(replies));
+					next[t] = canonical(reached, symmetry);
+					prob[t] = p;
+					reward[t] = mdp.reward(catalog.status(reached));
+					t++;
+				}
+			}
+		}
+		actionStart[size] = a;
+		transitionStart[a] = t;
+	}
+
+	private boolean isState(int id, Symmetry symmetry) {
+		if (!catalog.isXsTurn(id) && !catalog.isTerminal(id))
+			return false;
+		return symmetry == null || symmetry.canonicalId(id) == id;
+	}
+
+	private static int canonical(int id, Symmetry symmetry) {
+		return symmetry == null ? id : symmetry.canonicalId(id);
+	}
+
+	/**
+	 * @return the catalog whose ids are the states of this model
+	 */
+	public StateCatalog getCatalog() {
+		return catalog;
+	}
+
+	/**
+	 * @return the ids of the states of the MDP, in increasing order. The array must not be changed.
+	 */
+	int[] states() {
+		return states;
+	}
+
+	/**
+	 * @return a copy of the ids of the states of the MDP, in increasing order
+	 */
+	public int[] getStates() {
+		return Arrays.copyOf(states, states.length);
+	}
+
+	/**
+	 * @return the number of catalog ids, i.e. the length of an array of values indexed by state
+	 */
+	public int size() {
+		return catalog.size();
+	}
+
+	public int firstAction(int s) {
+		return actionStart[s];
+	}
+
+	public int endAction(int s) {
+		return actionStart[s + 1];
+	}
+
+	/**
+	 * @return the cell X plays in action a
+	 */
+	public int cell(int a) {
+		return actionCell[a];
+	}
+
+	/**
+	 * @return the move X makes in action a
+	 */
+	public Move move(int a) {
+		return catalog.getShape().move('X', actionCell[a]);
+	}
+
+	/**
+	 * @param s
+	 * @param cell
+	 * @return the action of state s that plays {@code cell}, or -1 if there is none
+	 */
+	public int action(int s, int cell) {
+		for (int a = actionStart[s]; a < actionStart[s + 1]; a++)
+			if (actionCell[a] == cell)
+				return a;
+		return -1;
+	}
+
+	public int firstTransition(int a) {
+		return transitionStart[a];
+	}
+
+	public int endTransition(int a) {
+		return transitionStart[a + 1];
+	}
+
+	public int next(int t) {
+		return next[t];
+	}
+
+	public double prob(int t) {
+		return prob[t];
+	}
+
+	public double reward(int t) {
+		return reward[t];
+	}
+
+	/**
+	 * @param a
+	 *            an action
+	 * @param values
+	 *            state values indexed by id
+	 * @param discount
+	 * @return Q(s,a): the sum over the transitions of action a of {@code prob*(reward+discount*values[next])}
+	 */
+	public double qValue(int a, double[] values, double discount) {
+		double q = 0;
+		for (int t = transitionStart[a]; t < transitionStart[a + 1]; t++)
+			q += prob[t] * (reward[t] + discount * values[next[t]]);
+		return q;
+	}
+
+	/**
+	 * @return the action of state s with the highest {@link #qValue}, the last one of them if there are ties, or -1 if s
+	 *         has no actions
+	 */
+	public int bestAction(int s, double[] values, double discount) {
+		int best = -1;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int a = actionStart[s]; a < actionStart[s + 1]; a++) {
+			double q = qValue(a, values, discount);
+			if (q >= max) {
+				max = q;
+				best = a;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * One synchronous (Jacobi) sweep of value iteration: {@code to[s]=bestValue(s, from)} for every state. Every new value
+	 * only depends on {@code from}, so the states can be backed up in any order, and in parallel, with the same result.
+	 *
+	 * @param from
+	 *            the current values, indexed by state id. Not changed.
+	 * @param to
+	 *            where the new values go
+	 * @param discount
+	 * @param pool
+	 *            the pool to split the states over, or null to sweep on this thread
+	 * @return the largest change {@code |to[s]-from[s]|}, the Bellman residual of {@code from}
+	 */
+	public double sweep(double[] from, double[] to, double discount, ForkJoinPool pool) {
+		Sweep sweep = new Sweep(from, to, discount, 0, states.length);
+		return pool == null ? sweep.compute() : pool.invoke(sweep);
+	}
+
+	/**
+	 * Backs up states[start] to states[end-1], splitting the range in two until it is at most {@link #SWEEP_GRAIN} states
+	 * long. The residual is the max over the two halves, which doesn't depend on how the work was split.
+	 */
+	private class Sweep extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] from;
+		private final double[] to;
+		private final double discount;
+		private final int start;
+		private final int end;
+
+		Sweep(double[] from, double[] to, double discount, int start, int end) {
+			this.from = from;
+			this.to = to;
+			this.discount = discount;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Double compute() {
+			if (end - start > SWEEP_GRAIN && getPool() != null) {
+				int middle = (start + end) >>> 1;
+				Sweep left = new Sweep(from, to, discount, start, middle);
+				left.fork();
+				double right = new Sweep(from, to, discount, middle, end).compute();
+				return Math.max(left.join(), right);
+			}
+
+			double residual = 0;
+			for (int i = start; i < end; i++) {
+				int s = states[i];
+				to[s] = bestValue(s, from, discount);
+				residual = Math.max(residual, Math.abs(to[s] - from[s]));
+			}
+			return residual;
+		}
+
+	}
+
+	/**
+	 * Solves the model exactly by backward induction. Every transition leads to a state with more pieces, and so a larger id
+	 * (see {@link StateCatalog}), so the states form a DAG and going through them from the largest id down backs up every
+	 * state after all of its successors. One backup per state gives the optimal values.
+	 *
+	 * @param discount
+	 * @return the optimal values, indexed by state id
+	 */
+	public double[] solve(double discount) {
+		double[] values = new double[size()];
+		for (int i = states.length - 1; i >= 0; i--) {
+			int s = states[i];
+			values[s] = bestValue(s, values, discount);
+		}
+		return values;
+	}
+
+	/**
+	 * Evaluates a fixed policy exactly, in the same single pass from the largest id down as {@link #solve(double)}: every
+	 * state is backed up once, under its action only.
+	 *
+	 * @param actions
+	 *            the action of each state, indexed by state id, or -1 for states without one, which are worth 0
+	 * @param discount
+	 * @return the values of the states under the policy, indexed by state id
+	 */
+	public double[] evaluate(int[] actions, double discount) {
+		double[] values = new double[size()];
+		for (int i = states.length - 1; i >= 0; i--) {
+			int s = states[i];
+			if (actions[s] >= 0)
+				values[s] = qValue(actions[s], values, discount);
+		}
+		return values;
+	}
+
+	/**
+	 * @return the highest {@link #qValue} of the actions of s, or 0 if s has no actions
+	 */
+	public double bestValue(int s, double[] values, double discount) {
+		if (actionStart[s] == actionStart[s + 1])
+			return 0;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int a = actionStart[s]; a < actionStart[s + 1]; a++)
+			max = Math.max(max, qValue(a, values, discount));
+		return max;
+	}
+
+}
@@ -11,5 +11,13 @@ public class DefensiveAgent extends Agent {
 	{
 		super(new DefensivePolicy());
 	}
+	
+	/**
+	 * @param rng where the random moves come from
+	 */
+	public DefensiveAgent(Rng rng)
+	{
+		super(new DefensivePolicy(rng));
+	}
 
 }
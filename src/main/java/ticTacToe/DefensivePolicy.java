@@ -2,7 +2,6 @@ package ticTacToe;
 
 
 import java.util.List;
-import java.util.Random;
 /**
  * A defensive policy: if there is a move to block the opponent's X's or O's in a row, this policy finds it and returns it. Otherwise
  * returns random move.
@@ -11,6 +10,21 @@ import java.util.Random;
  */
 public class DefensivePolicy extends Policy {
 	
+	final Rng r;
+	
+	public DefensivePolicy()
+	{
+		this(new Rng());
+	}
+	
+	/**
+	 * @param r where the random moves come from
+	 */
+	public DefensivePolicy(Rng r)
+	{
+		this.r=r;
+	}
+	
 public Move getMove(Game g) {
 		
 		
@@ -18,21 +32,17 @@ public Move getMove(Game g) {
 		
 		for(Move m: moves)
 		{
-			Game resulting=g.clone();
-			resulting.getBoard()[m.x][m.y]=m.who.getName();
-			resulting.evaluateGameState();
-			if (resulting.getState()==Game.X_WON||resulting.getState()==Game.O_WON)
+			if (g.isWinningMove(m.getMark(), g.getShape().cell(m)))
 			{
-				Move newMove=new Move(m.who.getName()=='X'?'O':'X', m.x,m.y);
+				Move newMove=Move.of(g.whoseTurn.getName(), m.x, m.y);
 				System.out.println("Playing defensive move");
 				return newMove;
 			}
 		}
 		
-		Random r=new Random();
 		System.out.println("Playing random move");
 		Move randomMove=moves.get(r.nextInt(moves.size()));
-		Move myMove=new Move(randomMove.who.getName()=='X'?'O':'X', randomMove.x,randomMove.y);
+		Move myMove=Move.of(g.whoseTurn.getName(), randomMove.x, randomMove.y);
 		
 		return myMove;
 		
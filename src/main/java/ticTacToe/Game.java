@@ -11,8 +11,9 @@ import java.util.List;
  * functionality for playing out a game between two agents, various other useful
  * methods.
  * 
- * 
- * 
+ * The board is 3x3 with three in a row to win unless a different
+ * {@link BoardShape} is given, in which case it is an m,n,k-game: m by n cells
+ * and k in a row to win.
  * 
  * @author ae187
  *
@@ -36,7 +37,36 @@ public class Game {
 	 */
 	int state = 0;
 
-	char[][] board = new char[3][3];
+	/**
+	 * The board as seen by {@link #getBoard()}. It is kept in sync with the
+	 * bitboards {@link #xBits} and {@link #oBits}, which are what the game logic
+	 * actually works on.
+	 */
+	char[][] board;
+
+	/**
+	 * The size of the board and the number in a row needed to win.
+	 */
+	final BoardShape shape;
+
+	/**
+	 * Occupancy bitboards: bit {@code cols*i+j} is set when X (respectively O) has
+	 * played at {@code board[i][j]}.
+	 */
+	long xBits = 0;
+	long oBits = 0;
+
+	/**
+	 * The board part of {@link #hashCode()}, i.e. the hash without the whose-turn
+	 * digit. Every move adds one power of three to it.
+	 */
+	int boardHash = 0;
+
+	/**
+	 * The number of distinct hash values on the 3x3 board: 3^10, see
+	 * {@link #hashCode()}.
+	 */
+	public static final int NUM_HASHES = 59049;
 
 	/**
 	 * the X agent
@@ -50,6 +80,17 @@ public class Game {
 
 	Agent whoseTurn;
 
+	/**
+	 * true for the canonical instances held by {@link StateCatalog}. These are
+	 * shared by everyone, so moves can't be executed on them: clone them first.
+	 */
+	boolean shared = false;
+
+	/**
+	 * The position of a shared game, which never changes. Null for other games.
+	 */
+	Position position = null;
+
 	/**
 	 * new game with new X and O agents with null policies
 	 */
@@ -68,6 +109,27 @@ public class Game {
 		this(x, o, x);
 	}
 
+	/**
+	 * new game on the given board with new X and O agents with null policies,
+	 * where X plays first
+	 * 
+	 * @param shape
+	 */
+	public Game(BoardShape shape) {
+		this(shape, new Agent(), new Agent());
+	}
+
+	/**
+	 * New game on the given board where x plays first
+	 * 
+	 * @param shape
+	 * @param x
+	 * @param o
+	 */
+	public Game(BoardShape shape, Agent x, Agent o) {
+		this(shape, x, o, x);
+	}
+
 	/**
 	 * A new game where whoseTurn starts the game.
 	 * 
@@ -93,6 +155,22 @@ public class Game {
 	 * @param whoseTurn
 	 */
 	public Game(Agent x, Agent o, Agent whoseTurn) {
+		this(BoardShape.STANDARD, x, o, whoseTurn);
+	}
+
+	/**
+	 * New game on the given board with X and O agents where it's whoseTurn's turn
+	 * to play.
+	 * 
+	 * @param shape
+	 * @param x
+	 * @param o
+	 * @param whoseTurn
+	 */
+	public Game(BoardShape shape, Agent x, Agent o, Agent whoseTurn) {
+		this.shape = shape;
+		this.board = new char[shape.rows][shape.cols];
+
 		this.x = x;
 		x.setName('X');
 
@@ -107,6 +185,18 @@ public class Game {
 
 	}
 
+	/**
+	 * A game between x and o, starting from position p.
+	 * 
+	 * @param p
+	 * @param x
+	 * @param o
+	 */
+	public Game(Position p, Agent x, Agent o) {
+		this(p.shape, x, o, p.xsTurn ? x : o);
+		setBitboards(p.xBits, p.oBits);
+	}
+
 	/**
 	 * To deep copy
 	 * 
@@ -117,29 +207,121 @@ public class Game {
 		this.whoseTurn = g.whoseTurn;
 		// WARNING: Currently Agents are not deep copied
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
+		this.shape = g.shape;
+		this.board = new char[shape.rows][shape.cols];
+		for (int i = 0; i < shape.rows; i++)
+			for (int j = 0; j < shape.cols; j++)
 				this.board[i][j] = g.board[i][j];
 
+		this.xBits = g.xBits;
+		this.oBits = g.oBits;
+		this.boardHash = g.boardHash;
+		this.state = g.state;
+
 	}
 
 	public void initBoard() {
 		// fill the board with e's (empty cells)
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
+		for (int i = 0; i < shape.rows; i++)
+			for (int j = 0; j < shape.cols; j++)
 				board[i][j] = ' ';
 
+		xBits = 0;
+		oBits = 0;
+		boardHash = 0;
+		state = ONGOING;
+
+	}
+
+	/**
+	 * @return the board this game is played on
+	 */
+	public BoardShape getShape() {
+		return shape;
+	}
+
+	/**
+	 * @return the position of the game: the board and whose turn it is, without
+	 *         the agents
+	 */
+	public Position getPosition() {
+		if (position != null)
+			return position;
+		return new Position(shape, xBits, oBits, whoseTurn == x, state);
+	}
+
+	/**
+	 * @return a mask of the empty cells
+	 */
+	long emptyCells() {
+		return ~(xBits | oBits) & shape.full;
+	}
+
+	/**
+	 * Puts {@code who} on cell (x, y), updating both the board and the bitboards.
+	 * Does not check legality or change whose turn it is.
+	 */
+	private void place(char who, int x, int y) {
+		int cell = shape.cell(x, y);
+		board[x][y] = who;
+		if (who == 'X') {
+			xBits |= 1L << cell;
+			boardHash += shape.cellWeight[cell];
+		} else {
+			oBits |= 1L << cell;
+			boardHash += 2 * shape.cellWeight[cell];
+		}
+	}
+
+	/**
+	 * Sets the position to the given bitboards and evaluates it. Whose turn it is
+	 * is left unchanged.
+	 */
+	void setBitboards(long xBits, long oBits) {
+		for (int cell = 0; cell < shape.cells; cell++) {
+			long bit = 1L << cell;
+			board[cell / shape.cols][cell % shape.cols] = (xBits & bit) != 0 ? 'X' : (oBits & bit) != 0 ? 'O' : ' ';
+		}
+		this.xBits = xBits;
+		this.oBits = oBits;
+		this.boardHash = shape.boardHash(xBits, oBits);
+		evaluateBitboards();
+	}
+
+	/**
+	 * @return the {@link #hashCode()} of the 3x3 game with these bitboards
+	 */
+	static int hash(long xBits, long oBits, boolean xsTurn) {
+		return BoardShape.STANDARD.boardHash(xBits, oBits) + (xsTurn ? 1 : 2);
+	}
+
+	/**
+	 * Rebuilds the bitboards and {@link #boardHash} from {@link #board}. Only
+	 * needed when the board array has been written to directly, e.g. through
+	 * {@link #getBoard()}.
+	 */
+	void syncBitboards() {
+		xBits = 0;
+		oBits = 0;
+		for (int i = 0; i < shape.rows; i++)
+			for (int j = 0; j < shape.cols; j++) {
+				if (board[i][j] == 'X')
+					xBits |= shape.bit(i, j);
+				else if (board[i][j] == 'O')
+					oBits |= shape.bit(i, j);
+			}
+		boardHash = shape.boardHash(xBits, oBits);
 	}
 
 	public boolean isLegal(Move m) {
-		if (m.x < 0 || m.x > 2 || m.y < 0 || m.y > 2)
+		if (!shape.contains(m.x, m.y))
 			return false;
 
-		if (m.who.getName() != whoseTurn.getName()) {
+		if (m.getMark() != whoseTurn.getName()) {
 			return false;
 		}
 
-		if (board[m.x][m.y] != ' ')
+		if ((emptyCells() & shape.bit(m.x, m.y)) == 0)
 			return false;
 
 		return true;
@@ -153,20 +335,18 @@ public class Game {
 	 */
 	public List<Game> getAllSuccessorGames() {
 		List<Game> result = new ArrayList<Game>();
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (board[i][j] == ' ') {
-					Game newGame = null;
-					try {
-						newGame = this.simulateMove(whoseTurn.getName(), i, j);
-					} catch (IllegalMoveException e) {
-						System.out.println(e.getMessage());
-						e.printStackTrace();
-					}
-					// System.out.println("Adding:\n"+newGame);
-					result.add(newGame);
-				}
+		for (long free = emptyCells(); free != 0; free &= free - 1) {
+			int cell = Long.numberOfTrailingZeros(free);
+			Game newGame = null;
+			try {
+				newGame = this.simulateMove(whoseTurn.getName(), cell / shape.cols, cell % shape.cols);
+			} catch (IllegalMoveException e) {
+				System.out.println(e.getMessage());
+				e.printStackTrace();
 			}
+			// System.out.println("Adding:\n"+newGame);
+			result.add(newGame);
+		}
 
 		return result;
 
@@ -177,32 +357,30 @@ public class Game {
 	 * or O's turn as specified by {@code xo} argument. NOTE: this method will
 	 * include ALL terminal states in the game.
 	 * 
+	 * Only games that can actually come up in play are returned, i.e. those
+	 * reachable from the empty board. The list is computed once by the
+	 * {@link StateCatalog} and shared: it can't be modified, and the games in it
+	 * must be cloned before executing moves on them.
+	 * 
 	 * @param xo
 	 *            specifies whose turn it should be in the resulting games.
 	 * @return
 	 */
 	public static List<Game> generateAllValidGames(char xo) {
-		List<Game> result = new ArrayList<Game>();
-		// this is the number of possible game hashes (2222222222 in base 3): 59048 -
-		// not all are valid. Here we only return the valid ones.
-		for (int i = 0; i < 59048; i++) {
-			Game g = inverseHash(i);
-			if (g == null)
-				continue;
-
-			if (g.isValid()) {
-				// System.out.println("for:"+i);
-				// System.out.println("got:\n"+g);
-				// System.out.println("turn:"+g.whoseTurn.getName());
-				// System.out.println("--------");
-				g.evaluateGameState();
-				if (g.whoseTurn.getName() == xo || g.isTerminal())
-					result.add(g);
-			}
-
-		}
+		return StateCatalog.get().gamesToMove(xo);
+	}
 
-		return result;
+	/**
+	 * {@link #generateAllValidGames(char)} on a board of the given shape. The
+	 * number of games grows very quickly with the size of the board.
+	 * 
+	 * @param shape
+	 * @param xo
+	 *            specifies whose turn it should be in the resulting games.
+	 * @return
+	 */
+	public static List<Game> generateAllValidGames(BoardShape shape, char xo) {
+		return StateCatalog.get(shape).gamesToMove(xo);
 	}
 
 	/**
@@ -216,16 +394,27 @@ public class Game {
 		if (getState() != ONGOING)
 			return possibleMoves;
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (getBoard()[i][j] == ' ')
-					possibleMoves.add(new Move(whoseTurn, i, j));
-			}
+		for (long free = emptyCells(); free != 0; free &= free - 1) {
+			int cell = Long.numberOfTrailingZeros(free);
+			possibleMoves.add(shape.move(whoseTurn.getName(), cell));
+		}
 
 		return possibleMoves;
 
 	}
 
+	/**
+	 * The moves available to the agent whose turn it is, as a cell mask: bit
+	 * {@code cols*x+y} is set if the agent can play at (x, y). Use
+	 * {@link BoardShape#move(char, int)} to get the moves themselves. Empty if the
+	 * game is over.
+	 * 
+	 * @return
+	 */
+	public long getLegalMoves() {
+		return state == ONGOING ? emptyCells() : 0;
+	}
+
 	/**
 	 * returns a list of all available moves by the agent whose turn it is NOT. Used
 	 * by the defensive agent.
@@ -238,11 +427,11 @@ public class Game {
 		if (getState() != ONGOING)
 			return possibleMoves;
 
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (getBoard()[i][j] == ' ')
-					possibleMoves.add(new Move((whoseTurn.getName() == 'X') ? 'O' : 'X', i, j));
-			}
+		char opponent = (whoseTurn.getName() == 'X') ? 'O' : 'X';
+		for (long free = emptyCells(); free != 0; free &= free - 1) {
+			int cell = Long.numberOfTrailingZeros(free);
+			possibleMoves.add(shape.move(opponent, cell));
+		}
 
 		return possibleMoves;
 
@@ -254,9 +443,9 @@ public class Game {
 
 	public String toString() {
 		String result = "\n";
-		for (int i = 0; i < 3; i++) {
+		for (int i = 0; i < shape.rows; i++) {
 			result += "|";
-			for (int j = 0; j < 3; j++) {
+			for (int j = 0; j < shape.cols; j++) {
 				result += board[i][j] + "|";
 
 			}
@@ -270,119 +459,55 @@ public class Game {
 
 	/**
 	 * Evaluates the game, and sets its state to one of DRAW, ONGOING, X_WIN or
-	 * O_WIN
+	 * O_WIN. The board is re-read first, so this is safe to call after writing to
+	 * {@link #getBoard()} directly.
 	 * 
 	 * @return an integer representing the game state
 	 */
 	public int evaluateGameState() {
+		syncBitboards();
+		return evaluateBitboards();
+	}
 
-		// checking columns
-		if (board[0][0] != ' ' && board[0][0] == board[0][1] && board[0][1] == board[0][2]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[1][0] != ' ' && board[1][0] == board[1][1] && board[1][1] == board[1][2]) {
-			if (board[1][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[2][0] != ' ' && board[2][0] == board[2][1] && board[2][1] == board[2][2]) {
-			if (board[2][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		// checking rows
-
-		if (board[0][0] != ' ' && board[0][0] == board[1][0] && board[1][0] == board[2][0]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[0][1] != ' ' && board[0][1] == board[1][1] && board[1][1] == board[2][1]) {
-			if (board[0][1] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-		if (board[0][2] != ' ' && board[0][2] == board[1][2] && board[1][2] == board[2][2]) {
-			if (board[0][2] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		// checking diagnols
-
-		if (board[0][0] != ' ' && board[0][0] == board[1][1] && board[1][1] == board[2][2]) {
-			if (board[0][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		if (board[2][0] != ' ' && board[2][0] == board[1][1] && board[1][1] == board[0][2]) {
-			if (board[2][0] == 'X')
-				this.state = X_WON;
-			else
-				this.state = O_WON;
-
-			return this.state;
-
-		}
-
-		boolean spacesLeft = false;
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				if (board[i][j] == ' ') {
-					spacesLeft = true;
-					break;
+	/**
+	 * Evaluates the game from the bitboards alone, without looking at
+	 * {@link #board}.
+	 * 
+	 * @return an integer representing the game state
+	 */
+	int evaluateBitboards() {
+		this.state = status(shape, xBits, oBits);
+		return this.state;
+	}
 
-				}
+	/**
+	 * @return the game state, one of DRAW, ONGOING, X_WIN or O_WIN, of the board
+	 *         with these bitboards
+	 */
+	static int status(BoardShape shape, long xBits, long oBits) {
+		boolean xLine = shape.hasLine(xBits);
+		boolean oLine = shape.hasLine(oBits);
+
+		if (xLine && oLine) {
+			// can only happen on boards that can't be reached in play. The first line
+			// found decides, as it always has.
+			for (long line : shape.lines) {
+				if ((xBits & line) == line)
+					return X_WON;
+				if ((oBits & line) == line)
+					return O_WON;
 			}
+		}
 
-		if (spacesLeft)
-			this.state = ONGOING;
+		if (xLine)
+			return X_WON;
+		else if (oLine)
+			return O_WON;
+		else if ((xBits | oBits) == shape.full)
+			return DRAW;
 		else
-			this.state = DRAW;
+			return ONGOING;
 
-		return this.state;
-
-	}
-
-	private int count(char xo) {
-		int count = 0;
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++)
-				if (board[i][j] == xo)
-					count++;
-		return count;
 	}
 
 	/**
@@ -391,8 +516,8 @@ public class Game {
 	 * @return
 	 */
 	public boolean isValid() {
-		int xs = count('X');
-		int os = count('O');
+		int xs = Long.bitCount(xBits);
+		int os = Long.bitCount(oBits);
 		if (Math.abs(xs - os) > 1)
 			return false;
 
@@ -412,13 +537,13 @@ public class Game {
 	 * @param who
 	 *            the agent making move (X or O)
 	 * @param x
-	 *            the x coordinate of the move (between 0 and 2 inclusive)
+	 *            the x coordinate of the move (between 0 and rows-1 inclusive)
 	 * @param y
 	 *            the y coordinate of the move
 	 * @return
 	 */
 	public Game simulateMove(char who, int x, int y) throws IllegalMoveException {
-		Move m = new Move(who, x, y);
+		Move m = Move.of(who, x, y);
 		return simulateMove(m);
 
 	}
@@ -431,25 +556,25 @@ public class Game {
 	 * @return the Game after the move has been executed.
 	 */
 	public Game simulateMove(Move m) throws IllegalMoveException {
-		if (whoseTurn == x && m.who.getName() != 'X')
+		if (whoseTurn == x && m.getMark() != 'X')
 			throw new IllegalMoveException("it is not x's turn");
 
-		if (whoseTurn == o && m.who.getName() != 'O')
+		if (whoseTurn == o && m.getMark() != 'O')
 			throw new IllegalMoveException("it is not o's turn");
 
-		if (board[m.x][m.y] != ' ')
+		if (!shape.contains(m.x, m.y) || (emptyCells() & shape.bit(m.x, m.y)) == 0)
 			throw new IllegalMoveException("Invalid move. The square is " + m);
 
 		Game copy = clone();
-		copy.board[m.x][m.y] = m.who.getName();
-		if (m.who.getName() == 'X')
+		copy.place(m.getMark(), m.x, m.y);
+		if (m.getMark() == 'X')
 			copy.whoseTurn = copy.o;
-		else if (m.who.getName() == 'O')
+		else if (m.getMark() == 'O')
 			copy.whoseTurn = copy.x;
 		else
 			throw new IllegalArgumentException();
 
-		copy.evaluateGameState();
+		copy.evaluateBitboards();
 
 		return copy;
 
@@ -461,24 +586,27 @@ public class Game {
 	 * @param m
 	 */
 	public void executeMove(Move m) throws IllegalMoveException {
-		if (whoseTurn == x && m.who.getName() != 'X')
+		if (shared)
+			throw new IllegalStateException("This game is shared by the StateCatalog. Clone it first.");
+
+		if (whoseTurn == x && m.getMark() != 'X')
 			throw new IllegalMoveException("it is not O's turn");
 
-		if (whoseTurn == o && m.who.getName() != 'O')
+		if (whoseTurn == o && m.getMark() != 'O')
 			throw new IllegalMoveException("it is not X's turn");
 
-		if (board[m.x][m.y] != ' ')
+		if (!shape.contains(m.x, m.y) || (emptyCells() & shape.bit(m.x, m.y)) == 0)
 			throw new IllegalMoveException("Invalid move. The location (" + m.x + "," + m.y + ") is not empty");
 
-		board[m.x][m.y] = m.who.getName();
+		place(m.getMark(), m.x, m.y);
 		if (whoseTurn.getName() == 'X')
 			whoseTurn = o;
-		else if (m.who.getName() == 'O')
+		else if (m.getMark() == 'O')
 			whoseTurn = x;
 		else
 			throw new IllegalArgumentException();
 
-		this.evaluateGameState();
+		this.evaluateBitboards();
 
 	}
 
@@ -489,16 +617,101 @@ public class Game {
 	 * @param who
 	 *            the agent making move (X or O)
 	 * @param x
-	 *            the x coordinate of the move (between 0 and 2 inclusive)
+	 *            the x coordinate of the move (between 0 and rows-1 inclusive)
 	 * @param y
-	 *            the y coordinate of the move (between 0 and 2 inclusive)
+	 *            the y coordinate of the move (between 0 and cols-1 inclusive)
 	 */
 	public void executeMove(char who, int x, int y) throws IllegalMoveException {
-		Move m = new Move(who, x, y);
+		Move m = Move.of(who, x, y);
 		executeMove(m);
 
 	}
 
+	/**
+	 * Plays {@code cell} for the agent whose turn it is, changing this game in
+	 * place. Meant for search: walk the game tree depth first on a single game,
+	 * undoing every move with {@link #unmakeMove(int)} on the way back, instead of
+	 * cloning it with {@link #simulateMove(Move)} at every node.
+	 * 
+	 * @param cell
+	 *            the cell played, {@code cols*x+y} for a move at (x, y)
+	 */
+	public void makeMove(int cell) {
+		if (shared)
+			throw new IllegalStateException("This game is shared by the StateCatalog. Clone it first.");
+		if (state != ONGOING || cell < 0 || cell >= shape.cells || (emptyCells() & (1L << cell)) == 0)
+			throw new IllegalArgumentException("Can't play cell " + cell + " on:" + this);
+
+		place(whoseTurn.getName(), cell / shape.cols, cell % shape.cols);
+		whoseTurn = (whoseTurn == x) ? o : x;
+		evaluateBitboards();
+	}
+
+	/**
+	 * {@link #makeMove(int)} for a move by the agent whose turn it is.
+	 * 
+	 * @param m
+	 */
+	public void makeMove(Move m) {
+		if (m.getMark() != whoseTurn.getName())
+			throw new IllegalArgumentException("It is not " + m.getMark() + "'s turn");
+		if (!shape.contains(m.x, m.y))
+			throw new IllegalArgumentException(m + " is off the board");
+		makeMove(shape.cell(m));
+	}
+
+	/**
+	 * Takes back the last move made, which must have been played on {@code cell}.
+	 * The board, whose turn it is and the game state are restored to what they
+	 * were before the move.
+	 * 
+	 * @param cell
+	 *            the cell of the last move
+	 */
+	public void unmakeMove(int cell) {
+		long bit = 1L << cell;
+		if (shared)
+			throw new IllegalStateException("This game is shared by the StateCatalog. Clone it first.");
+
+		if ((xBits & bit) != 0) {
+			xBits &= ~bit;
+			boardHash -= shape.cellWeight[cell];
+			whoseTurn = x;
+		} else if ((oBits & bit) != 0) {
+			oBits &= ~bit;
+			boardHash -= 2 * shape.cellWeight[cell];
+			whoseTurn = o;
+		} else
+			throw new IllegalArgumentException("Cell " + cell + " is empty");
+
+		board[cell / shape.cols][cell % shape.cols] = ' ';
+		// a move could be made, so the game was still going
+		state = ONGOING;
+	}
+
+	/**
+	 * {@link #unmakeMove(int)} for the move m.
+	 * 
+	 * @param m
+	 */
+	public void unmakeMove(Move m) {
+		unmakeMove(shape.cell(m));
+	}
+
+	/**
+	 * Tells us whether {@code who} would win by playing {@code cell}, whether or
+	 * not it's their turn, without changing the game.
+	 * 
+	 * @param who
+	 *            'X' or 'O'
+	 * @param cell
+	 *            an empty cell, {@code cols*x+y} for (x, y)
+	 * @return true if the move completes a line for {@code who}
+	 */
+	public boolean isWinningMove(char who, int cell) {
+		return shape.hasLineThrough((who == 'X' ? xBits : oBits) | (1L << cell), cell);
+	}
+
 	/**
 	
 	/**
@@ -558,33 +771,18 @@ public class Game {
 	 * You can use this method to store (e.g. write to file) your value functions or
 	 * policies.
 	 * 
+	 * On other boards the number has one digit per cell, and wraps around on
+	 * boards of more than 19 cells, so it is only unique on small boards.
+	 * 
 	 * @return an integer representation of the game
 	 */
 	public int hashCode() {
 		// ' ' ->0
 		// 'X' ->1
 		// 'O' ->2
-		String s = "";
-		for (int i = 0; i < 3; i++)
-			for (int j = 0; j < 3; j++) {
-				switch (board[i][j]) {
-				case 'X':
-					s += "1";
-					break;
-				case 'O':
-					s += "2";
-					break;
-				case ' ':
-					s += "0";
-					break;
-				}
-
-			}
-		// also encode whose turn it is. Either 1 or 2 (x or o)
-
-		s += (whoseTurn == x) ? "1" : "2";
-
-		return Integer.parseInt(s, 3);
+		// the board digits are kept up to date in boardHash by every move. The last
+		// digit encodes whose turn it is. Either 1 or 2 (x or o)
+		return boardHash + ((whoseTurn == x) ? 1 : 2);
 
 	}
 
@@ -594,67 +792,46 @@ public class Game {
 	 * method.
 	 * 
 	 * You can use this method to read your policy or value functions from file.
+	 * Only for the 3x3 board. Use {@link Position#inverseHash(int)} if you don't
+	 * need the agents.
 	 * 
 	 * @param hash
 	 * @return the Game corresponding to the hash
 	 */
 	public static Game inverseHash(int hash) {
-
-		Game g = new Game();
-
-		String s1 = Integer.toString(hash, 3);
-
-		if (s1.charAt(s1.length() - 1) == '0')
+		Position p = Position.inverseHash(hash);
+		if (p == null)
 			return null;
 
-		// add leading 0's
-		String s = new String(s1);
-
-		for (int i = 0; i < 10 - s1.length(); i++) {
-			s = "0" + s;
-		}
-		// System.out.println("Intermediate string:"+s);
-		// set whose turn
-		if (s.charAt(s.length() - 1) == '1')
-			g.whoseTurn = g.x;
-		else if (s.charAt(s.length() - 1) == '2')
-			g.whoseTurn = g.o;
-
-		for (int l = s.length() - 2; l >= 0; l--) {
-			int i = (int) l / 3;
-			int j = (int) l % 3;
-			switch (s.charAt(l)) {
-			case '0':
-				g.board[i][j] = ' ';
-				break;
-			case '1':
-				g.board[i][j] = 'X';
-				break;
-			case '2':
-				g.board[i][j] = 'O';
-				break;
-			default:
-				throw new IllegalStateException("this shouldn't happen!");
-
-			}
-		}
-
-		return g;
+		return new Game(p, new Agent(), new Agent());
 	}
 
 	public boolean equals(Object other) {
-		if (other == null)
+		if (other == this)
+			return true;
+		else if (other == null)
 			return false;
 		else if (!(other instanceof Game))
 			return false;
 
-		return this.hashCode() == other.hashCode();
+		Game g = (Game) other;
+		return xBits == g.xBits && oBits == g.oBits && (whoseTurn == x) == (g.whoseTurn == g.x)
+				&& shape.equals(g.shape);
 	}
 
 	public int getState() {
 		return this.state;
 	}
 
+	/**
+	 * @return the id of this game in the {@link StateCatalog}, or -1 if it isn't a
+	 *         valid game. Use {@link StateCatalog#successor(int, int)} to walk the
+	 *         game from there without creating new games.
+	 */
+	public int getStateId() {
+		return StateCatalog.get(shape).id(this);
+	}
+
 	public boolean isTerminal() {
 
 		return this.state != ONGOING;
@@ -2,63 +2,143 @@ package ticTacToe;
 
 /**
  * A move in the Tic-Tac-Toe game. If the game is modelled as an MDP, a Move is essentially an MDP Action.
+ *
+ * Moves are immutable. There are only 18 different moves on the 3x3 board (X or O on one of 9 cells), and
+ * {@link #of(char, int)} returns a shared instance of each, so move generation doesn't need to create any objects. Larger
+ * boards (see {@link BoardShape}) have coordinates up to {@link #MAX_COORDINATE}, and {@link #of(char, int, int)} shares
+ * those moves too.
  * @author ae187
  *
  */
 public class Move {
-	
+
+	/**
+	 * can be either 'X', or 'O'
+	 */
+	public final Agent who;
+	public final int x;
+	public final int y;
+
 	/**
-	 * can be either 'X', or 'O' 
+	 * 'X' or 'O', fixed when the move is made, whatever happens to {@link #who} afterwards.
 	 */
-	public Agent who;
-	public int x;
-	public int y;
-	
+	private final char mark;
+
+	/**
+	 * The agents standing for X and O in moves that aren't made by a particular agent. Their names can't be changed.
+	 */
+	static final Agent X=new Mark('X');
+	static final Agent O=new Mark('O');
+
+	/**
+	 * The largest x or y coordinate of a move, on the largest board there is.
+	 */
+	public static final int MAX_COORDINATE=7;
+
+	/**
+	 * MOVES[8*x+y] is X playing at (x, y), MOVES[64+8*x+y] is O playing at (x, y)
+	 */
+	private static final Move[] MOVES=new Move[128];
+
+	static {
+		for(int x=0;x<=MAX_COORDINATE;x++)
+			for(int y=0;y<=MAX_COORDINATE;y++)
+			{
+				MOVES[8*x+y]=new Move(X, x, y);
+				MOVES[64+8*x+y]=new Move(O, x, y);
+			}
+	}
+
 	public Move(char who, int x, int y)
 	{
-		if (who!='X' && who!='O')
-			throw new IllegalArgumentException("Can only be a move by X or by O");
-		
-		this.who=new Agent();
-		this.who.setName(who);
-		
-		if (x<0 || x>2 || y<0 || y>2)
-			throw new IllegalArgumentException("Invalid x or y coordinates");
-		this.x=x;
-		this.y=y;
-		
+		this(who=='X'?X:who=='O'?O:null, x, y, who);
+
 	}
-	
+
 	public Move(Agent who, int x, int y)
 	{
-		if (who.getName()!='X' && who.getName()!='O')
+		this(who, x, y, who.getName());
+
+	}
+
+	private Move(Agent who, int x, int y, char mark)
+	{
+		if (mark!='X' && mark!='O')
 			throw new IllegalArgumentException("Can only be a move by X or by O");
-		
+
 		this.who=who;
-		
-		if (x<0 || x>2 || y<0 || y>2)
+		this.mark=mark;
+
+		if (x<0 || x>MAX_COORDINATE || y<0 || y>MAX_COORDINATE)
 			throw new IllegalArgumentException("Invalid x or y coordinates");
 		this.x=x;
 		this.y=y;
-		
+
 	}
-	
+
 	public Move(int x, int y)
 	{
 		this('X', x, y);
-	
+
+	}
+
+	/**
+	 * @param who 'X' or 'O'
+	 * @param cell the cell of the 3x3 board played, {@code 3*x+y} for a move at (x, y). Use
+	 * {@link BoardShape#move(char, int)} on other boards.
+	 * @return the shared move of {@code who} on {@code cell}
+	 */
+	public static Move of(char who, int cell)
+	{
+		if (cell<0 || cell>8)
+			throw new IllegalArgumentException("Invalid cell "+cell);
+
+		return of(who, cell/3, cell%3);
+	}
+
+	/**
+	 * @return the shared move of {@code who} at (x, y)
+	 */
+	public static Move of(char who, int x, int y)
+	{
+		if (x<0 || x>MAX_COORDINATE || y<0 || y>MAX_COORDINATE)
+			throw new IllegalArgumentException("Invalid x or y coordinates");
+
+		if (who=='X')
+			return MOVES[8*x+y];
+		else if (who=='O')
+			return MOVES[64+8*x+y];
+
+		throw new IllegalArgumentException("Can only be a move by X or by O");
+	}
+
+	/**
+	 * @return the cell played on the 3x3 board, between 0 and 8: {@code 3*x+y}. Use {@link BoardShape#cell(Move)} on
+	 * other boards.
+	 */
+	public int getCell()
+	{
+		return 3*x+y;
 	}
-	
+
+	/**
+	 * @return 'X' or 'O'
+	 */
+	public char getMark()
+	{
+		return mark;
+	}
+
 	public String toString()
 	{
-		return who+"("+x+","+y+")";
+		return mark+"("+x+","+y+")";
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((who == null) ? 0 : who.getName());
+		result = prime * result + mark;
 		result = prime * result + x;
 		result = prime * result + y;
 		return result;
@@ -73,20 +153,37 @@ public class Move {
 		if (getClass() != obj.getClass())
 			return false;
 		Move other = (Move) obj;
-		if (this.who.getName()!=other.who.getName())
+		if (this.mark!=other.mark)
 			return false;
-		
+
 		if (x != other.x)
 			return false;
-		
+
 		if (y != other.y)
 			return false;
-		
+
 		return true;
 	}
-	
-	
-	
-	
+
+	/**
+	 * An agent with a fixed name, for the shared moves.
+	 */
+	private static class Mark extends Agent
+	{
+		Mark(char name)
+		{
+			super(null);
+			this.name=name;
+		}
+
+		@Override
+		public void setName(char n)
+		{
+			if (n!=name)
+				throw new UnsupportedOperationException("The "+name+" of a move can't be renamed");
+		}
+	}
+
+
 
 }
@@ -11,15 +11,16 @@ import java.util.HashMap;
 public class Policy {
 	
 	/**
-	 * a hash map that stores the policy
+	 * a hash map that stores the policy. It is keyed on the {@link Position} of a game, so that it doesn't hold on to
+	 * any agents.
 	 */
-	HashMap<Game, Move> policy=new HashMap<Game, Move>();
+	HashMap<Position, Move> policy=new HashMap<Position, Move>();
 	
 	/**
 	 * Create policy according to this map
 	 * @param policy
 	 */
-	public Policy(HashMap<Game, Move> policy) {
+	public Policy(HashMap<Position, Move> policy) {
 		this.policy=policy;
 	}
 	
@@ -35,12 +36,18 @@ public class Policy {
 	 */
 	public Move getMove(Game g) {
 		
-		if (policy.containsKey(g))
-			return policy.get(g);
+		return getMove(g.getPosition());
 		
-		return null;
 		
+	}
+	
+	/**
+	 * @param p
+	 * @return the move in position {@code p}, or null if there is none
+	 */
+	public Move getMove(Position p) {
 		
+		return policy.get(p);
 	}
 	
 	/**
@@ -2,13 +2,16 @@ package ticTacToe;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 /**
  * A policy iteration agent. You should implement the following methods:
  * (1) {@link PolicyIterationAgent#evaluatePolicy}: this is the policy evaluation step from your lectures
@@ -27,22 +30,62 @@ import java.util.Set;
 public class PolicyIterationAgent extends Agent {
 
 	/**
-	 * This map is used to store the values of states according to the current policy (policy evaluation). 
+	 * The values of states according to the current policy (policy evaluation), indexed by state id
 	 */
-	HashMap<Game, Double> policyValues=new HashMap<Game, Double>();
+	ValueFunction stateValues;
 	
 	/**
-	 * This stores the current policy as a map from {@link Game}s to {@link Move}. 
+	 * A read-only view of {@link #stateValues}, keyed on the positions of the states
 	 */
-	HashMap<Game, Move> curPolicy=new HashMap<Game, Move>();
+	Map<Position, Double> policyValues=Collections.emptyMap();
+	
+	/**
+	 * This stores the current policy as a map from the {@link Position}s of games to {@link Move}. 
+	 */
+	HashMap<Position, Move> curPolicy=new HashMap<Position, Move>();
 	
 	double discount=0.9;
 	
+	/**
+	 * If true, only canonical games (see {@link Symmetry}) are stored in {@link #policyValues} and {@link #curPolicy}, and 
+	 * other games are handled through their canonical game.
+	 */
+	boolean symmetric=false;
+	
 	/**
 	 * The mdp model used, see {@link TTTMDP}
 	 */
 	TTTMDP mdp;
 	
+	/**
+	 * {@link #evaluationSweeps} value for evaluating each policy exactly, see {@link CompiledMDP#evaluate(int[], double)}
+	 */
+	public static final int EXACT=0;
+	
+	/**
+	 * How {@link #evaluatePolicy} evaluates the current policy: {@link #EXACT}ly, with one backup per state in reverse 
+	 * topological order, or by at most this many in place sweeps (modified policy iteration), stopping early once the 
+	 * values change by less than {@link #delta}.
+	 */
+	int evaluationSweeps=EXACT;
+	
+	/**
+	 * The number of threads {@link #improvePolicy} looks ahead from the states with. Each state's new move only depends 
+	 * on {@link #policyValues}, and ties always go to the later move, so the policy is the same however many threads 
+	 * there are.
+	 */
+	int parallelism=1;
+	
+	/**
+	 * The number of states whose move the last policy improvement step changed
+	 */
+	int changed=0;
+	
+	/**
+	 * Where the moves of the initial random policy come from
+	 */
+	Rng rng=new Rng();
+	
 	/**
 	 * loads the policy from file if one exists. Policies should be stored in .pol files directly under the project folder.
 	 */
@@ -79,6 +122,87 @@ public class PolicyIterationAgent extends Agent {
 		initRandomPolicy();
 		train();
 	}
+	/**
+	 * @param discountFactor
+	 * @param symmetric if true, learn over canonical games only. See {@link #symmetric}.
+	 */
+	public PolicyIterationAgent(double discountFactor, boolean symmetric) {
+		
+		this.discount=discountFactor;
+		this.symmetric=symmetric;
+		this.mdp=new TTTMDP();
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+	/**
+	 * Use this constructor to plan with the given MDP, e.g. one on a larger board (see {@link TTTMDP#TTTMDP(BoardShape)}).
+	 * @param mdp
+	 * @param discountFactor
+	 */
+	public PolicyIterationAgent(TTTMDP mdp, double discountFactor) {
+		
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+	/**
+	 * Use this constructor to choose how policies are evaluated.
+	 * @param mdp
+	 * @param discountFactor
+	 * @param evaluationSweeps {@link #EXACT}, or the most sweeps per evaluation. See {@link #evaluationSweeps}.
+	 */
+	public PolicyIterationAgent(TTTMDP mdp, double discountFactor, int evaluationSweeps) {
+		
+		if (evaluationSweeps<0)
+			throw new IllegalArgumentException("evaluationSweeps should be EXACT or a number of sweeps");
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		this.evaluationSweeps=evaluationSweeps;
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+	/**
+	 * Use this constructor to choose how policies are evaluated, and to improve them with several threads.
+	 * @param mdp
+	 * @param discountFactor
+	 * @param evaluationSweeps {@link #EXACT}, or the most sweeps per evaluation. See {@link #evaluationSweeps}.
+	 * @param parallelism the number of threads. See {@link #parallelism}.
+	 */
+	public PolicyIterationAgent(TTTMDP mdp, double discountFactor, int evaluationSweeps, int parallelism) {
+		
+		if (evaluationSweeps<0)
+			throw new IllegalArgumentException("evaluationSweeps should be EXACT or a number of sweeps");
+		if (parallelism<1)
+			throw new IllegalArgumentException("parallelism should be at least 1");
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		this.evaluationSweeps=evaluationSweeps;
+		this.parallelism=parallelism;
+		initValues();
+		initRandomPolicy();
+		train();
+	}
+	
+	/**
+	 * Use this constructor to choose where the initial random policy comes from, e.g. a seeded {@link Rng} to make 
+	 * training reproducible.
+	 * @param mdp
+	 * @param discountFactor
+	 * @param rng
+	 */
+	public PolicyIterationAgent(TTTMDP mdp, double discountFactor, Rng rng) {
+		
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		this.rng=rng;
+		initValues();
+		initRandomPolicy();
+		train();
+	}
 	/**
 	 * Use this constructor to set the various parameters of the Tic-Tac-Toe MDP
 	 * @param discountFactor
@@ -96,16 +220,14 @@ public class PolicyIterationAgent extends Agent {
 		train();
 	}
 	/**
-	 * Initialises the {@link #policyValues} map, and sets the initial value of all states to 0 
-	 * (V0 under some policy pi ({@link #curPolicy} from the lectures). Uses {@link Game#inverseHash} and {@link Game#generateAllValidGames(char)} to do this. 
+	 * Initialises {@link #stateValues} and the {@link #policyValues} map, and sets the initial value of all states to 0 
+	 * (V0 under some policy pi ({@link #curPolicy} from the lectures). The states are those of the compiled {@link #mdp}.
 	 * 
 	 */
 	public void initValues()
 	{
-		List<Game> allGames=Game.generateAllValidGames('X');//all valid games where it is X's turn, or it's terminal.
-		for(Game g: allGames)
-			this.policyValues.put(g, 0.0);
-		
+		stateValues=new ValueFunction(mdp.compile(symmetric));
+		policyValues=stateValues.asMap();
 	}
 	
 	/**
@@ -117,15 +239,13 @@ public class PolicyIterationAgent extends Agent {
 	{
 		// ***** THIS CREATES A RANDOM POLICY ***** //
 		//Create a entry set to retrieve the current set
-		Set<Entry<Game, Double>> entryS = policyValues.entrySet();
-		//Initialise a random operator
-		Random rP = new Random();
+		Set<Entry<Position, Double>> entryS = policyValues.entrySet();
 		
 		// loop over all the sets
-		for(Entry<Game, Double> gs: entryS){		
+		for(Entry<Position, Double> gs: entryS){		
 			
 			// Get the key corresponding to current game
-			Game g = gs.getKey();
+			Position g = gs.getKey();
 			// Store all the possible actions based on the current game in a list
 			List<Move> actions = g.getPossibleMoves();
 			
@@ -136,24 +256,24 @@ public class PolicyIterationAgent extends Agent {
 				List<IndexPair> pairs=new ArrayList<IndexPair>();
 				
 				// Modified from randomPolicy class
-				for(int i=0;i<3;i++)
-					for(int j=0;j<3;j++)
+				for(int i=0;i<g.getShape().rows;i++)
+					for(int j=0;j<g.getShape().cols;j++)
 					{
-						if (g.getBoard()[i][j]==' ')
+						if (g.at(i, j)==' ')
 							pairs.add(new IndexPair(i,j));
 					}
 				
 				// Ensure the list contains pairs
 				if(pairs.size() > 0){		
 					// retrieve a random pair
-					IndexPair random = pairs.get(rP.nextInt(pairs.size()));
+					IndexPair random = pairs.get(rng.nextInt(pairs.size()));
 					// Retrieve the random move associated with the random pair
-					Move rMove = new Move(g.whoseTurn, random.x, random.y);
+					Move rMove = Move.of(g.whoseTurn(), random.x, random.y);
 					
 					// ensure the action is legal
-					while (!g.isLegal(rMove)){					
-						random=pairs.get(rP.nextInt(pairs.size()));
-						rMove = new Move(g.whoseTurn, random.x, random.y);
+					while (!g.getPossibleMoves().contains(rMove)){					
+						random=pairs.get(rng.nextInt(pairs.size()));
+						rMove = Move.of(g.whoseTurn(), random.x, random.y);
 					}
 					
 					// Add the game and random move to the current policy
@@ -166,8 +286,8 @@ public class PolicyIterationAgent extends Agent {
 	
 	
 	/**
-	 * Performs policy evaluation steps until the maximum change in values is less than {@code delta}, in other words
-	 * until the values under the current policy converge. After running this method, 
+	 * Evaluates the current policy, exactly or with a bounded number of sweeps (see {@link #evaluationSweeps}). A sweep
+	 * stops being repeated once the maximum change in values is less than {@code delta}. After running this method, 
 	 * the {@link PolicyIterationAgent#policyValues} map should contain the values of each reachable state under the current policy. 
 	 * You should use the {@link TTTMDP} {@link PolicyIterationAgent#mdp} provided to do this.
 	 *
@@ -176,64 +296,70 @@ public class PolicyIterationAgent extends Agent {
 	protected void evaluatePolicy(double delta)
 
 	{
-		// ***** THIS METHOD PERFORMS POLICY EVALUATION STEPS UNTIL THE VALUES UNDER THE CURRENT POLICY CONVERGE ***** //
+		// ***** THIS METHOD EVALUATES THE CURRENT POLICY, WITH ONE BACKUP PER STATE AND SWEEP ***** //
+		CompiledMDP model=mdp.compile(symmetric);
+		int[] actions=loadPolicy(model);
+		if (evaluationSweeps==EXACT)
+		{
+			storeValues(model, model.evaluate(actions, discount));
+			return;
+		}
+		
+		double[] values=loadValues(model);
+		int[] states=model.states();
 		double maxDif;
-		// loop until the maximum change is less than or equal to delta
+		int sweeps=0;
+		// loop until the maximum change is less than delta, or the sweeps run out
 		do{
-			//Create a entry set to retrieve the current set
-			Set<Entry<Game, Move>> entrys = curPolicy.entrySet();	
-			// Initialise the maxDif
 			maxDif = 0.0;
-	
-			// loop over all the sets
-			for(Entry<Game, Move> g: entrys){			
-				
-				// Get the key corresponding to current game
-				Game gs = g.getKey();
-				// Store all the possible actions based on the current game in a list
-				List<Move> actions = gs.getPossibleMoves();	
-				// Retrieve the value of policy of the current game.
-				double currentValue = policyValues.get(gs);			
-
-				// If the current game is terminal, assign the policy value to 0.0
-				if(gs.isTerminal()){
-					this.policyValues.put(gs, 0.0); 
-					}
+			for(int s: states){
+				// terminal states are worth nothing, and keep their value of 0
+				if (actions[s]<0)
+					continue;
 				
-				else{
-					// loop over all the actions in the list actions
-					for(Move b: actions){								
-						// Retrieve the transition probability of the current mdp and store it in a list
-						List<TransitionProb> tProbability = mdp.generateTransitions(gs, curPolicy.get(gs));	
-						double vks1 = 0.0;		
-					
-						// Loop over the list of transition probabilities
-						for (TransitionProb tp: tProbability) {
-							
-							// Retrieve the values to compute vks+1 = Sum of T(s,pi(s),s') [R(s,pi(s),s') + gamma * vk(s') 
-							int ta = tProbability.indexOf(tp);
-							TransitionProb currentTProbability = tp;
-							double r = tProbability.get(ta).outcome.localReward;
-							double t = tProbability.get(ta).prob;																		
-							double sPrime = policyValues.get(currentTProbability.outcome.sPrime);
-							vks1 = vks1 + t * (r + (discount * sPrime));															
-						}
-						// Calculate the difference between the current value and the new value 
-						double dif = Math.abs(currentValue - vks1);
-						// replace the old policy with the new one 
-						policyValues.replace(gs, vks1);
-						// Update the max Difference 
-						if(dif > maxDif){
-							maxDif = dif;
-						}
-					}
-				}
+				double vks1=model.qValue(actions[s], values, discount);
+				maxDif=Math.max(maxDif, Math.abs(values[s]-vks1));
+				values[s]=vks1;
 			}
-		// loop until the max difference is greater than or equal to delta 
-		}while(maxDif >= delta);
+			sweeps++;
+		}while(maxDif >= delta && sweeps < evaluationSweeps);
+		
+		storeValues(model, values);
 	}
 	
+	/**
+	 * @return the values in {@link #stateValues}, indexed by state id. Sweeps may update them in place.
+	 */
+	double[] loadValues(CompiledMDP model)
+	{
+		return stateValues.values();
+	}
 	
+	/**
+	 * Writes values indexed by state id back into {@link #stateValues}
+	 */
+	void storeValues(CompiledMDP model, double[] values)
+	{
+		stateValues.setAll(values);
+	}
+	
+	/**
+	 * @return the actions of {@link #curPolicy} in the compiled model, indexed by state id: -1 for states without a move
+	 */
+	int[] loadPolicy(CompiledMDP model)
+	{
+		StateCatalog catalog=model.getCatalog();
+		BoardShape shape=catalog.getShape();
+		int[] actions=new int[model.size()];
+		Arrays.fill(actions, -1);
+		for(int s: model.states())
+		{
+			Move m=curPolicy.get(catalog.position(s));
+			if (m!=null)
+				actions[s]=model.action(s, shape.cell(m));
+		}
+		return actions;
+	}
 	
 	/**This method should be run AFTER the {@link PolicyIterationAgent#evaluatePolicy} train method to improve the current policy according to 
 	 * {@link PolicyIterationAgent#policyValues}. You will need to do a single step of expectimax from each game (state) key in {@link PolicyIterationAgent#curPolicy} 
@@ -243,66 +369,92 @@ public class PolicyIterationAgent extends Agent {
 	 */
 	protected boolean improvePolicy()
 	{
+		CompiledMDP model=mdp.compile(symmetric);
+		StateCatalog catalog=model.getCatalog();
+		double[] values=loadValues(model);
+		int[] actions=loadPolicy(model);
+		int[] states=model.states();
+		int[] improved=actions.clone();
 		
-		double max;
-		Move bMove;
-		Move currentMove;
-		
+		Improvement all=new Improvement(model, values, actions, improved, 0, states.length);
+		if (parallelism>1)
 		{
-			boolean oPolicy = false;
-			Set<Entry<Game, Move>> entrys = curPolicy.entrySet();	
+			ForkJoinPool pool=new ForkJoinPool(parallelism);
+			try
+			{
+				changed=pool.invoke(all);
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		else
+			changed=all.compute();
+		
+		// curPolicy is a HashMap, so the new moves go in on this thread
+		if (changed>0)
+			for(int s: states)
+				if (improved[s]!=actions[s])
+					curPolicy.put(catalog.position(s), model.move(improved[s]));
+		return changed>0;
 
-			for(Entry<Game, Move> g: entrys){	
-					// Initialise variables 
-					max = 0.0;
-					bMove = null;
-					// Get the key corresponding to current game
-					Game gs = g.getKey();
-					// Store all the possible actions based on the current game in a list
-					List<Move> actions = gs.getPossibleMoves();	
-					// Create a list to store all the updated policy values
-					List<Double> a = new ArrayList<Double>();	
-					// Get the current move
-					currentMove = curPolicy.get(gs);
-					
-					// loop over all the actions in the list actions
-					for(Move b: actions){								
-						// Retrieve the transition probability of the current mdp and store it in a list
-						List<TransitionProb> tProbability = mdp.generateTransitions(gs, b);			
-						double vks1 = 0.0;		
-						
-						// Loop over the list of transition probabilities
-						for (TransitionProb tp: tProbability) {
-							
-							// Retrieve the values to compute vks+1 = Sum of T(s,pi(s),s') [R(s,pi(s),s') + gamma * vk(s') 
-							int ta = tProbability.indexOf(tp);
-							TransitionProb currentTProbability = tp;
-							double r = tProbability.get(ta).outcome.localReward;
-							double t = tProbability.get(ta).prob;																		
-							double sPrime = policyValues.get(currentTProbability.outcome.sPrime);
-							vks1 = vks1 + t * (r + (discount * sPrime));															
-						}
-						
-						// add the newly calculated policy value to the list a
-						// max stores the max of a
-						a.add(vks1);											
-						max = Collections.max(a);								
-						
-						// If the new value is the highest, make the current move the best move
-						if(vks1 == max){										
-							bMove = b;							
-						}
-					}
-					
-					// add the best move to the current policy and signify a optimal policy has been found, given that the current move is the best move
-					if (!(bMove.equals(currentMove)))  {
-						curPolicy.put(gs, bMove);
-						oPolicy = true;
-					}
+	}
+	
+	/**
+	 * A single step of expectimax from the states {@code states[start]} to {@code states[end-1]} of the model, splitting
+	 * the range in two until it is at most {@link CompiledMDP#SWEEP_GRAIN} states long. The best action of each state 
+	 * goes into {@code improved}, and the result is the number of states whose action changed, summed over the two halves.
+	 */
+	private class Improvement extends RecursiveTask<Integer>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final CompiledMDP model;
+		private final double[] values;
+		private final int[] actions;
+		private final int[] improved;
+		private final int start;
+		private final int end;
+		
+		Improvement(CompiledMDP model, double[] values, int[] actions, int[] improved, int start, int end)
+		{
+			this.model=model;
+			this.values=values;
+			this.actions=actions;
+			this.improved=improved;
+			this.start=start;
+			this.end=end;
+		}
+		
+		@Override
+		protected Integer compute()
+		{
+			if (end-start>CompiledMDP.SWEEP_GRAIN && getPool()!=null)
+			{
+				int middle=(start+end)>>>1;
+				Improvement left=new Improvement(model, values, actions, improved, start, middle);
+				left.fork();
+				int right=new Improvement(model, values, actions, improved, middle, end).compute();
+				return left.join()+right;
+			}
+			
+			int[] states=model.states();
+			int count=0;
+			for(int i=start; i<end; i++){
+				int s=states[i];
+				if (actions[s]<0)
+					continue;
+				
+				// ties go to the later move
+				int best=model.bestAction(s, values, discount);
+				if (best!=actions[s]) {
+					improved[s]=best;
+					count++;
 				}
-			return oPolicy;
+			}
+			return count;
 		}
-
 	}
 	
 	/**
@@ -322,7 +474,7 @@ public class PolicyIterationAgent extends Agent {
 				this.evaluatePolicy(delta);
 			} while (this.improvePolicy() == true);
 
-			super.policy = new Policy(curPolicy);
+			super.policy = symmetric ? new SymmetricPolicy(curPolicy) : new Policy(curPolicy);
 		}
 
 		
@@ -0,0 +1,226 @@
+package ticTacToe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A position in the game: where the X's and O's are and whose turn it is, without any {@link Agent}s attached. Positions
+ * are immutable and cheap to create, so they are what planners, policies and q-tables use as keys. A {@link Game} binds
+ * two agents to a position and plays it out: see {@link Game#getPosition()} and
+ * {@link Game#Game(Position, Agent, Agent)}.
+ *
+ * Positions have the same {@link #hashCode()} as the games they come from, but a position is never equal to a game.
+ *
+ * @author ae187
+ *
+ */
+public final class Position {
+
+	final BoardShape shape;
+
+	/**
+	 * Occupancy bitboards, as in {@link Game#xBits}
+	 */
+	final long xBits;
+	final long oBits;
+
+	final boolean xsTurn;
+
+	/**
+	 * one of {@link Game#ONGOING}, {@link Game#X_WON}, {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	private final int state;
+
+	private final int hash;
+
+	/**
+	 * @param shape
+	 *            the board
+	 * @param xBits
+	 *            the cells taken by X, bit {@code cols*x+y} for (x, y)
+	 * @param oBits
+	 *            the cells taken by O
+	 * @param xsTurn
+	 *            true if X is to play
+	 */
+	public Position(BoardShape shape, long xBits, long oBits, boolean xsTurn) {
+		this(shape, xBits, oBits, xsTurn, Game.status(shape, xBits, oBits));
+	}
+
+	/**
+	 * For positions whose state is already known
+	 */
+	Position(BoardShape shape, long xBits, long oBits, boolean xsTurn, int state) {
+		if ((xBits & oBits) != 0 || ((xBits | oBits) & ~shape.full) != 0)
+			throw new IllegalArgumentException("Not a position on a " + shape + " board");
+
+		this.shape = shape;
+		this.xBits = xBits;
+		this.oBits = oBits;
+		this.xsTurn = xsTurn;
+		this.state = state;
+		this.hash = shape.boardHash(xBits, oBits) + (xsTurn ? 1 : 2);
+	}
+
+	/**
+	 * @return the empty 3x3 board with {@code whoseTurn} to play
+	 */
+	public static Position start(char whoseTurn) {
+		return start(BoardShape.STANDARD, whoseTurn);
+	}
+
+	/**
+	 * @return the empty board of this shape with {@code whoseTurn} to play
+	 */
+	public static Position start(BoardShape shape, char whoseTurn) {
+		if (whoseTurn != 'X' && whoseTurn != 'O')
+			throw new IllegalArgumentException("Argument should be either 'X' or 'O'");
+		return new Position(shape, 0, 0, whoseTurn == 'X', Game.ONGOING);
+	}
+
+	/**
+	 * The position with this {@link #hashCode()} on the 3x3 board, the inverse of {@link #hashCode()}. Unlike
+	 * {@link Game#inverseHash(int)} this doesn't create any agents.
+	 *
+	 * @param hash
+	 * @return the position, or null if no position has this hash
+	 */
+	public static Position inverseHash(int hash) {
+		if (hash < 0 || hash >= Game.NUM_HASHES)
+			throw new IllegalArgumentException("Not a game hash: " + hash);
+
+		if (hash % 3 == 0)
+			return null;
+
+		long xBits = 0;
+		long oBits = 0;
+		int digits = hash / 3;
+		for (int cell = 8; cell >= 0; cell--, digits /= 3) {
+			if (digits % 3 == 1)
+				xBits |= 1L << cell;
+			else if (digits % 3 == 2)
+				oBits |= 1L << cell;
+		}
+		return new Position(BoardShape.STANDARD, xBits, oBits, hash % 3 == 1);
+	}
+
+	public BoardShape getShape() {
+		return shape;
+	}
+
+	/**
+	 * @return 'X' or 'O'
+	 */
+	public char whoseTurn() {
+		return xsTurn ? 'X' : 'O';
+	}
+
+	/**
+	 * @return the cells taken by X, bit {@code cols*x+y} for (x, y)
+	 */
+	public long getXBits() {
+		return xBits;
+	}
+
+	/**
+	 * @return the cells taken by O, bit {@code cols*x+y} for (x, y)
+	 */
+	public long getOBits() {
+		return oBits;
+	}
+
+	/**
+	 * @return 'X', 'O' or ' ' for an empty cell
+	 */
+	public char at(int x, int y) {
+		long bit = shape.bit(x, y);
+		return (xBits & bit) != 0 ? 'X' : (oBits & bit) != 0 ? 'O' : ' ';
+	}
+
+	/**
+	 * @return one of {@link Game#ONGOING}, {@link Game#X_WON}, {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	public int getState() {
+		return state;
+	}
+
+	public boolean isTerminal() {
+		return state != Game.ONGOING;
+	}
+
+	/**
+	 * @return a mask of the cells the side to play can play, as in {@link Game#getLegalMoves()}
+	 */
+	public long getLegalMoves() {
+		return state == Game.ONGOING ? ~(xBits | oBits) & shape.full : 0;
+	}
+
+	/**
+	 * @return the moves available to the side to play. Empty if the game is over.
+	 */
+	public List<Move> getPossibleMoves() {
+		List<Move> moves = new ArrayList<Move>();
+		for (long free = getLegalMoves(); free != 0; free &= free - 1)
+			moves.add(shape.move(whoseTurn(), Long.numberOfTrailingZeros(free)));
+		return moves;
+	}
+
+	/**
+	 * @param cell
+	 *            a legal move, {@code cols*x+y} for (x, y)
+	 * @return the position after the side to play plays {@code cell}
+	 */
+	public Position play(int cell) {
+		if (cell < 0 || cell >= shape.cells || (getLegalMoves() & (1L << cell)) == 0)
+			throw new IllegalArgumentException("Can't play cell " + cell + " on:" + this);
+
+		long bit = 1L << cell;
+		if (xsTurn)
+			return new Position(shape, xBits | bit, oBits, false);
+		return new Position(shape, xBits, oBits | bit, true);
+	}
+
+	/**
+	 * @param m
+	 *            a legal move by the side to play
+	 * @return the position after m
+	 */
+	public Position play(Move m) {
+		if (m.getMark() != whoseTurn())
+			throw new IllegalArgumentException("It is not " + m.getMark() + "'s turn");
+		if (!shape.contains(m.x, m.y))
+			throw new IllegalArgumentException(m + " is off the board");
+		return play(shape.cell(m));
+	}
+
+	/**
+	 * The same number as {@link Game#hashCode()} of a game in this position
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof Position))
+			return false;
+		Position other = (Position) obj;
+		return hash == other.hash && xBits == other.xBits && oBits == other.oBits && xsTurn == other.xsTurn
+				&& shape.equals(other.shape);
+	}
+
+	public String toString() {
+		String result = "\n";
+		for (int i = 0; i < shape.rows; i++) {
+			result += "|";
+			for (int j = 0; j < shape.cols; j++)
+				result += at(i, j) + "|";
+			result += "\n";
+		}
+		return result;
+	}
+
+}
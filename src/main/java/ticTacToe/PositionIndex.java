@@ -0,0 +1,111 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * Gives every position added to it a dense id, in the order they are added. A position is the X and O bitboards and
+ * whose turn it is. This is an open addressing hash table over primitive arrays, so it can hold the millions of positions
+ * of the larger boards without creating an object for each of them.
+ *
+ * @author ae187
+ *
+ */
+class PositionIndex {
+
+	/**
+	 * table[slot] is the id of the position in that slot, or -1 if the slot is empty. Kept at most half full.
+	 */
+	private int[] table = new int[1 << 10];
+
+	private long[] xs = new long[1 << 9];
+	private long[] os = new long[1 << 9];
+	private boolean[] xsTurn = new boolean[1 << 9];
+
+	private int size = 0;
+
+	PositionIndex() {
+		Arrays.fill(table, -1);
+	}
+
+	/**
+	 * @return the number of positions added
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the id of the position, or -1 if it hasn't been added
+	 */
+	int get(long xBits, long oBits, boolean xToPlay) {
+		int mask = table.length - 1;
+		for (int slot = slot(xBits, oBits, xToPlay) & mask;; slot = (slot + 1) & mask) {
+			int id = table[slot];
+			if (id < 0 || (xs[id] == xBits && os[id] == oBits && xsTurn[id] == xToPlay))
+				return id;
+		}
+	}
+
+	/**
+	 * Adds the position unless it is already there.
+	 *
+	 * @return the id of the position
+	 */
+	int add(long xBits, long oBits, boolean xToPlay) {
+		int mask = table.length - 1;
+		int slot = slot(xBits, oBits, xToPlay) & mask;
+		for (;; slot = (slot + 1) & mask) {
+			int id = table[slot];
+			if (id < 0)
+				break;
+			if (xs[id] == xBits && os[id] == oBits && xsTurn[id] == xToPlay)
+				return id;
+		}
+
+		if (size == xs.length) {
+			xs = Arrays.copyOf(xs, 2 * size);
+			os = Arrays.copyOf(os, 2 * size);
+			xsTurn = Arrays.copyOf(xsTurn, 2 * size);
+		}
+		int id = size++;
+		xs[id] = xBits;
+		os[id] = oBits;
+		xsTurn[id] = xToPlay;
+		table[slot] = id;
+		if (2 * size > table.length)
+			rehash();
+		return id;
+	}
+
+	long xBits(int id) {
+		return xs[id];
+	}
+
+	long oBits(int id) {
+		return os[id];
+	}
+
+	boolean xsTurn(int id) {
+		return xsTurn[id];
+	}
+
+	private void rehash() {
+		table = new int[2 * table.length];
+		Arrays.fill(table, -1);
+		int mask = table.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = slot(xs[id], os[id], xsTurn[id]) & mask;
+			while (table[slot] >= 0)
+				slot = (slot + 1) & mask;
+			table[slot] = id;
+		}
+	}
+
+	private static int slot(long xBits, long oBits, boolean xToPlay) {
+		long h = xBits * 0x9E3779B97F4A7C15L + oBits * 0xC2B2AE3D27D4EB4FL + (xToPlay ? 1 : 0);
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
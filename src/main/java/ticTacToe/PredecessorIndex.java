@@ -0,0 +1,88 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * For every state of a {@link CompiledMDP}, the actions that can lead to it: the reverse of the transitions. An action is
+ * a (state, move) pair, see {@link #state(int)} and {@link CompiledMDP#move(int)}. This is a flat array of actions per
+ * state, like the transitions of the model, so that it can be built for the larger boards too.
+ *
+ * @author ae187
+ *
+ */
+class PredecessorIndex {
+
+	/**
+	 * The actions leading to state s are action[start[s]] to action[start[s+1]-1], each of them once
+	 */
+	private final int[] start;
+	private final int[] action;
+
+	/**
+	 * owner[a] is the state whose action a is
+	 */
+	private final int[] owner;
+
+	PredecessorIndex(CompiledMDP model) {
+		int size = model.size();
+		int[] states = model.states();
+		int numActions = model.endAction(size - 1);
+
+		owner = new int[numActions];
+		for (int s : states)
+			for (int a = model.firstAction(s); a < model.endAction(s); a++)
+				owner[a] = s;
+
+		// count first, then fill in reverse so that each state's actions end up in increasing order. In a symmetric model
+		// several replies to an action can reach the same canonical state, and lastAction[next] stops that action being
+		// listed twice.
+		start = new int[size + 1];
+		int[] lastAction = new int[size];
+		Arrays.fill(lastAction, -1);
+		for (int a = 0; a < numActions; a++)
+			for (int t = model.firstTransition(a); t < model.endTransition(a); t++) {
+				int next = model.next(t);
+				if (lastAction[next] != a) {
+					lastAction[next] = a;
+					start[next + 1]++;
+				}
+			}
+		for (int s = 0; s < size; s++)
+			start[s + 1] += start[s];
+
+		action = new int[start[size]];
+		int[] end = Arrays.copyOfRange(start, 1, size + 1);
+		Arrays.fill(lastAction, -1);
+		for (int a = numActions - 1; a >= 0; a--)
+			for (int t = model.firstTransition(a); t < model.endTransition(a); t++) {
+				int next = model.next(t);
+				if (lastAction[next] != a) {
+					lastAction[next] = a;
+					action[--end[next]] = a;
+				}
+			}
+	}
+
+	int firstPredecessor(int s) {
+		return start[s];
+	}
+
+	int endPredecessor(int s) {
+		return start[s + 1];
+	}
+
+	/**
+	 * @return the i'th action in the index, one that leads to the state i is listed under
+	 */
+	int action(int i) {
+		return action[i];
+	}
+
+	/**
+	 * @return the state action a is taken in
+	 */
+	int state(int a) {
+		return owner[a];
+	}
+
+}
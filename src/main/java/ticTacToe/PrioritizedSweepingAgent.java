@@ -0,0 +1,115 @@
+package ticTacToe;
+
+/**
+ * Value iteration by prioritized sweeping. Instead of backing up every state in every sweep, this keeps the states in a
+ * queue ordered by their Bellman error (how much a backup would change their value), and backs up the state with the
+ * largest error first. After a backup only the states that can move into the changed state, found through a
+ * {@link PredecessorIndex}, can have a new error, so only they are checked and queued. It stops when no state has an error
+ * above {@link #theta}, or after as many backups as {@link #k} full sweeps would take.
+ * 
+ * @author ae187
+ *
+ */
+public class PrioritizedSweepingAgent extends ValueIterationAgent
+{
+	
+	/**
+	 * The number of backups the last call to {@link #iterate()} performed
+	 */
+	long backups=0;
+	
+	/**
+	 * This constructor trains the agent offline first and sets its policy
+	 */
+	public PrioritizedSweepingAgent()
+	{
+		this(new TTTMDP(), 0.9);
+	}
+	
+	/**
+	 * @param mdp
+	 * @param discountFactor
+	 */
+	public PrioritizedSweepingAgent(TTTMDP mdp, double discountFactor)
+	{
+		this(mdp, discountFactor, 1e-6);
+	}
+	
+	/**
+	 * @param mdp
+	 * @param discountFactor
+	 * @param theta states whose Bellman error is at most this aren't backed up. See {@link #theta}.
+	 */
+	public PrioritizedSweepingAgent(TTTMDP mdp, double discountFactor, double theta)
+	{
+		super((Policy) null);
+		if (theta<0)
+			throw new IllegalArgumentException("theta should be at least 0");
+		this.mdp=mdp;
+		this.discount=discountFactor;
+		this.theta=theta;
+		initValues();
+		train();
+	}
+	
+	/**
+	 * Backs up states in order of their Bellman error until none is above {@link #theta}. After running this method, 
+	 * {@link #valueFunction} contains the values of each reachable state.
+	 */
+	@Override
+	public void iterate()
+	{
+		CompiledMDP model=mdp.compile(symmetric);
+		PredecessorIndex predecessors=new PredecessorIndex(model);
+		StateQueue queue=new StateQueue(model.size());
+		double[] values=loadValues(model);
+		int[] states=model.states();
+		
+		for(int s: states)
+			check(model, values, queue, s);
+		
+		backups=0;
+		long maxBackups=(long) k*states.length;
+		while(!queue.isEmpty() && backups<maxBackups)
+		{
+			int s=queue.poll();
+			values[s]=model.bestValue(s, values, discount);
+			backups++;
+			
+			/* only the states that can move into s can have a different error now. The actions of a state are listed 
+			 * next to each other, so each state is checked once. */
+			int last=-1;
+			for(int i=predecessors.firstPredecessor(s); i<predecessors.endPredecessor(s); i++)
+			{
+				int p=predecessors.state(predecessors.action(i));
+				if (p!=last)
+					check(model, values, queue, p);
+				last=p;
+			}
+		}
+		
+		// no full sweeps: the residual is the largest error left in the queue, 0 if every error is at most theta
+		sweeps=0;
+		residual=queue.maxPriority();
+		storeValues(model, values);
+	}
+	
+	/**
+	 * Queues state s if its Bellman error is above {@link #theta}
+	 */
+	private void check(CompiledMDP model, double[] values, StateQueue queue, int s)
+	{
+		double error=Math.abs(model.bestValue(s, values, discount)-values[s]);
+		if (error>theta)
+			queue.raise(s, error);
+	}
+	
+	/**
+	 * @return the number of backups the last value iteration performed
+	 */
+	public long getBackups()
+	{
+		return backups;
+	}
+	
+}
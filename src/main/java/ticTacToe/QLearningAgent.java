@@ -1,10 +1,11 @@
 package ticTacToe;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.Map.Entry;
-import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 /**
  * A Q-Learning agent with a Q-Table, i.e. a table of Q-Values. This table is implemented in the {@link QTable} class.
  * 
@@ -41,14 +42,32 @@ public class QLearningAgent extends Agent {
 	 */
 	double epsilon=0.1;
 	
+	/**
+	 * If true, the q-table only holds canonical games (see {@link Symmetry}), and every update applies to all the games 
+	 * symmetric to the one played.
+	 */
+	boolean symmetric=false;
+	
+	/**
+	 * The number of threads to train with. With more than one, the episodes are split between workers that share the 
+	 * q-table, see {@link #trainParallel()}.
+	 */
+	int parallelism=1;
+	
+	/**
+	 * Where the exploration moves, and the moves of the opponent in training, come from. Each worker thread gets its own
+	 * {@link Rng#split()} of it.
+	 */
+	Rng rng=new Rng();
+	
 	/**
 	 * This is the Q-Table. To get an value for an (s,a) pair, i.e. a (game, move) pair, you can do
-	 * qTable.get(game).get(move) which return the Q(game,move) value stored. Be careful with 
-	 * cases where there is currently no value. You can use the containsKey method to check if the mapping is there.
+	 * qTable.getQValue(game, move) which return the Q(game,move) value stored. Be careful with 
+	 * cases where there is currently no value, for which it returns null.
 	 * 
 	 */
 	
-	QTable qTable=new QTable();
+	QTable qTable;
 	
 	
 	/**
@@ -75,6 +94,89 @@ public class QLearningAgent extends Agent {
 		train();
 	}
 	
+	/**
+	 * Construct a Q-Learning agent that learns from interactions with {@code opponent}.
+	 * @param opponent the opponent agent that this Q-Learning agent will interact with to learn.
+	 * @param learningRate This is the rate at which the agent learns. Alpha from your lectures.
+	 * @param numEpisodes The number of episodes (games) to train for
+	 * @param symmetric if true, learn over canonical games only. See {@link #symmetric}.
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount, boolean symmetric)
+	{
+		env=new TTTEnvironment(opponent);
+		this.alpha=learningRate;
+		this.numEpisodes=numEpisodes;
+		this.discount=discount;
+		this.symmetric=symmetric;
+		initQTable();
+		train();
+	}
+	
+	/**
+	 * Construct a Q-Learning agent that learns from interactions with {@code opponent}, on several threads at once.
+	 * @param opponent the opponent agent that this Q-Learning agent will interact with to learn.
+	 * @param learningRate This is the rate at which the agent learns. Alpha from your lectures.
+	 * @param numEpisodes The number of episodes (games) to train for, between all the threads
+	 * @param symmetric if true, learn over canonical games only. See {@link #symmetric}.
+	 * @param parallelism the number of threads. See {@link #parallelism}.
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount, boolean symmetric, int parallelism)
+	{
+		if (parallelism<1)
+			throw new IllegalArgumentException("parallelism should be at least 1");
+		env=new TTTEnvironment(opponent);
+		this.alpha=learningRate;
+		this.numEpisodes=numEpisodes;
+		this.discount=discount;
+		this.symmetric=symmetric;
+		this.parallelism=parallelism;
+		initQTable();
+		train();
+	}
+	
+	/**
+	 * Construct a Q-Learning agent whose exploration comes from {@code rng}, e.g. a seeded {@link Rng} to make training
+	 * reproducible. With more than one thread the order in which the workers update the q-table still varies.
+	 * @param opponent the opponent agent that this Q-Learning agent will interact with to learn.
+	 * @param learningRate This is the rate at which the agent learns. Alpha from your lectures.
+	 * @param numEpisodes The number of episodes (games) to train for, between all the threads
+	 * @param symmetric if true, learn over canonical games only. See {@link #symmetric}.
+	 * @param parallelism the number of threads. See {@link #parallelism}.
+	 * @param rng where the random choices in training come from
+	 */
+	public QLearningAgent(Agent opponent, double learningRate, int numEpisodes, double discount, boolean symmetric, int parallelism, Rng rng)
+	{
+		if (parallelism<1)
+			throw new IllegalArgumentException("parallelism should be at least 1");
+		env=new TTTEnvironment(opponent);
+		this.alpha=learningRate;
+		this.numEpisodes=numEpisodes;
+		this.discount=discount;
+		this.symmetric=symmetric;
+		this.parallelism=parallelism;
+		this.rng=rng;
+		initQTable();
+		train();
+	}
+	
+	/**
+	 * Construct a Q-Learning agent that learns to play on a board of the given shape from interactions with {@code opponent}.
+	 * Symmetry reduction is only available on the 3x3 board.
+	 * @param shape the board to play on, see {@link BoardShape}
+	 * @param opponent the opponent agent that this Q-Learning agent will interact with to learn.
+	 * @param learningRate This is the rate at which the agent learns. Alpha from your lectures.
+	 * @param numEpisodes The number of episodes (games) to train for
+	 */
+	public QLearningAgent(BoardShape shape, Agent opponent, double learningRate, int numEpisodes, double discount)
+	{
+		env=new TTTEnvironment(shape, opponent);
+		this.alpha=learningRate;
+		this.numEpisodes=numEpisodes;
+		this.discount=discount;
+		initQTable();
+		train();
+	}
+	
 	/**
 	 * Initialises all valid q-values -- Q(g,m) -- to 0.
 	 *  
@@ -82,17 +184,15 @@ public class QLearningAgent extends Agent {
 	
 	protected void initQTable()
 	{
-		List<Game> allGames=Game.generateAllValidGames('X');//all valid games where it is X's turn, or it's terminal.
-		for(Game g: allGames)
+		StateCatalog catalog=StateCatalog.get(env.getShape());
+		this.qTable=new QTable(catalog);
+		for(int id=0; id<catalog.size(); id++)//all valid games where it is X's turn
 		{
-			List<Move> moves=g.getPossibleMoves();
-			for(Move m: moves)
-			{
-				this.qTable.addQValue(g, m, 0.0);
-				//System.out.println("initing q value. Game:"+g);
-				//System.out.println("Move:"+m);
-			}
+			if (!catalog.isXsTurn(id) || (symmetric && Symmetry.get().canonicalId(id)!=id))
+				continue;
 			
+			for(long moves=catalog.legalMoves(id); moves!=0; moves&=moves-1)
+				this.qTable.set(id, Long.numberOfTrailingZeros(moves), 0.0);
 		}
 		
 	}
@@ -107,6 +207,35 @@ public class QLearningAgent extends Agent {
 	}
 	
 	
+	/**
+	 * @return Q(g,m), read from the canonical game of {@code g} if {@link #symmetric}
+	 */
+	Double getQValue(Game g, Move m)
+	{
+		if (!symmetric)
+			return qTable.getQValue(g, m);
+		
+		int id=qTable.catalog.id(g);
+		if (id<0)
+			return null;
+		double v=qValue(id, env.getShape().cell(m));
+		return Double.isNaN(v) ? null : v;
+	}
+	
+	/**
+	 * Moves Q(g,m) towards {@code sample} at the learning rate, on the canonical game of {@code g} if {@link #symmetric}:
+	 * {@code Q(g,m)=(1-alpha)*Q(g,m)+alpha*sample}. Atomic, so that workers training in parallel don't lose each 
+	 * other's updates (see {@link QTable#update(int, int, double, double)}).
+	 * @return the new Q(g,m)
+	 */
+	double updateQValue(Game g, Move m, double sample)
+	{
+		int id=qTable.catalog.id(g);
+		if (id<0)
+			throw new IllegalArgumentException("Not a reachable game:"+g);
+		return updateQValue(id, env.getShape().cell(m), sample);
+	}
+	
 	/**
 	 *  Implement this method. It should play {@code this.numEpisodes} episodes of Tic-Tac-Toe with the TTTEnvironment, updating q-values according 
 	 *  to the Q-Learning algorithm as required. The agent should play according to an epsilon-greedy policy where with the probability {@code epsilon} the
@@ -118,164 +247,154 @@ public class QLearningAgent extends Agent {
 	
 	public void train()
 	{
+		if (parallelism>1)
+			trainParallel();
+		else
+			runEpisodes(numEpisodes, rng);
+		
+		//--------------------------------------------------------
+		//you shouldn't need to delete the following lines of code.
+		this.policy=extractPolicy();
+		if (this.policy==null) 
+		{
+			System.out.println("Unimplemented methods! First implement the train() & extractPolicy methods");
+			//System.exit(1);
+		}
+	
+	}
+	
+	/**
+	 * Trains on {@link #parallelism} threads at once, Hogwild style: each worker plays its share of the 
+	 * {@link #numEpisodes} episodes in its own environments, and they all update the one q-table without locking it.
+	 */
+	void trainParallel()
+	{
+		ExecutorService workers=Executors.newFixedThreadPool(parallelism);
+		try
+		{
+			List<Future<?>> running=new ArrayList<Future<?>>();
+			for(int i=0; i<parallelism; i++)
+			{
+				// the episodes that don't divide evenly go to the first workers
+				final int episodes=numEpisodes/parallelism+(i<numEpisodes%parallelism ? 1 : 0);
+				// split here rather than in the worker, so the workers get the same generators every time
+				final Rng workerRng=rng.split();
+				running.add(workers.submit(new Runnable()
+				{
+					public void run()
+					{
+						runEpisodes(episodes, workerRng);
+					}
+				}));
+			}
+			for(Future<?> f: running)
+				f.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training", e);
+		}
+		catch(ExecutionException e)
+		{
+			throw new IllegalStateException("A training worker failed", e.getCause());
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Plays {@code episodes} episodes in one environment, reset between episodes, updating the q-values as it goes. The 
+	 * states are {@link StateCatalog} ids and the moves cells, so once it's going this creates no objects.
+	 * @param x where the random choices come from, used by this thread only
+	 */
+	void runEpisodes(int episodes, Rng x)
+	{
+		// the opponent in training is a random agent
+		TTTEnvironment env2 = new TTTEnvironment(env.getShape(), new RandomAgent(x.split()));
+		StateCatalog catalog = qTable.getCatalog();
+		StepOutcome outcome = new StepOutcome();
+		
 		// loop over all the episodes to train the agent
-		for(int k=0; k < numEpisodes; k++) {
+		for(int k=0; k < episodes; k++) {
 			
-			// create a new environment for TTT
-			TTTEnvironment env2 = new TTTEnvironment();
-			Game g = env2.getCurrentGameState();
-			Double updatedQValue = 0.0;
+			env2.reset();
+			int s = env2.getStateId();
 	
 			// loop over the current game until it ends
-			while (!g.isTerminal()) {
+			while (!env2.isTerminal()) {
 
+				long moves = env2.getLegalMoves();
+				int cell;
 				// create a random double to compare to epsilon. This is used to determine whether to exploit or explore
-				Random x = new Random();
-				Double r = x.nextDouble();
-				
-				// if the random number is greater than epsilon, exploit
-				if(r > epsilon){
-						// ***** EXPLOIT *****//
-					
-						int maxAction = 0;
-						// Initialise list of possible moves. If its empty, assign 0 to the QValue.
-						// Else, assign a variable with the first instance of the list of actions.
-						// This is used to compare the rest of the actions to find the max action.
-						List <Move> actions = env2.getPossibleMoves();
-						if (actions.isEmpty()) {
-							updatedQValue = 0.0; 
-							} 
-						else {
-							HashMap <Move, Double> valuesA1 =qTable.get(g);
-							Move maxA = actions.get(0);
-							updatedQValue = valuesA1.get(maxA);
-						}
-						// gets the maxA Q(s,a)
-						// loops over all the actions, and retrieves the index of the action and QValue associated with the largest QValue from qTable
-						for(Move m: actions) {
-							if(qTable.getQValue(g, m) >= updatedQValue) {
-								maxAction = actions.indexOf(m);
-								updatedQValue = qTable.getQValue(g, m);
-							}
-						}
-					
-						// Execute the action with the largest QValue associated with it.
-						Outcome outcome = null;
-						try {
-							outcome = env2.executeMove(actions.get(maxAction));
-						} catch (IllegalMoveException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-						
-						// Create a list of actions based on the environment AFTER executing the action.
-						// Initialise list of possible moves. If its empty, assign 0 to the QValue.
-						// Else, assign a variable with the first instance of the list of actions.
-						// This is used to compare the rest of the actions to find the max action.
-						List <Move> actionsUpdated = env2.getPossibleMoves();
-						if (actionsUpdated.size() == 0) {
-							updatedQValue = 0.0;
-						} 
-						else {
-							HashMap <Move, Double> valuesA2 =qTable.get(outcome.sPrime);
-							Move maxA2 = actionsUpdated.get(0);
-							updatedQValue = valuesA2.get(maxA2);
-						}
-						
-						
-						// Find the max of Q(s',a')
-						// If s' is not terminal, complete the maxQ(s',a') loop, else assign the new QValue 0.
-						// Loop over all the actions in the new actions list and retrieve the max QValue associated with S prime
-						if(!outcome.sPrime.isTerminal()){
-							for(Move nextA: actionsUpdated){
-								if(qTable.getQValue(outcome.sPrime, nextA) >= updatedQValue) 
-								{
-									updatedQValue = qTable.getQValue(outcome.sPrime, nextA);
-								}
-							}
-						}
-						else {
-							updatedQValue = 0.0;
-						}
-						
-						// Calculate the sample using the formula 
-						// Sample = R(s,a,s') + gamma * maxa'Q(s',a')
-						// Where R signifies the Local reward, gamma is the discount and maxa'Q(s',a') is the maxQ value based on the max action taken.
-						Double sample = outcome.localReward + discount * updatedQValue;
-						// Add the new QValue onto the running average using the formula
-						// Q(s,a) = (1 - alpha) * Q(s,a) + alpha * Sample
-						Double QValue = (1 - alpha) * qTable.getQValue(outcome.s, (actions.get(maxAction))) + alpha * sample;
-						qTable.addQValue(outcome.s, actions.get(maxAction), QValue);
-				}
+				if (x.nextDouble() > epsilon)
+					// ***** EXPLOIT *****//
+					cell = bestCell(s, moves);
 				else {
-						// ***** EXPLORE ***** //
-					
-						// Initialise list of possible moves.
-						List <Move> actions2 = env2.getPossibleMoves();
-						// Create a random variable from 0 to size of the list of moves and retrieve the action associated with that number from the moves list.
-						int upperbound = actions2.size();
-						int l = x.nextInt(upperbound);
-						Move a2 = actions2.get(l);
-						
-
-						// Execute the random action associated with it.
-						Outcome outcome2 = null;
-						try {
-							 outcome2 = env2.executeMove(a2);
-						} catch (IllegalMoveException e) {
-							e.printStackTrace();
-						}
-						
-						// Create a list of actions based on the environment AFTER executing the action.
-						// Initialise list of possible moves. If its empty, assign 0 to the QValue.
-						// Else, assign a variable with the first instance of the list of actions.
-						// This is used to compare the rest of the actions to find the max action.
-						List <Move> actions2Updated = env2.getPossibleMoves();
-						if (actions2Updated.size() == 0) {
-							updatedQValue = 0.0;
-						}
-						else {
-							HashMap <Move, Double> moveValues =qTable.get(outcome2.sPrime);
-							Move maxMove = actions2Updated.get(0);
-							updatedQValue = moveValues.get(maxMove);
-						}
+					// ***** EXPLORE ***** //
+					cell = x.nextCell(moves);
+				}
 				
-						// Find the max of Q(s',a')
-						// If s' is not terminal, complete the maxQ(s',a') loop, else assign the new QValue 0.
-						// Loop over all the actions in the new actions list and retrieve the max QValue associated with S prime
-						if(!outcome2.sPrime.isTerminal()){
-						for(Move b: actions2Updated) {
-							if(qTable.getQValue(outcome2.sPrime, b) >= updatedQValue) {
-								updatedQValue = qTable.getQValue(outcome2.sPrime, b);
-								}
-							}
-						}
-						else {
-							updatedQValue = 0.0;
-						}
-						
-						// Calculate the sample using the formula 
-						// Sample = R(s,a,s') + gamma * maxa'Q(s',a')
-						// Where R signifies the Local reward, gamma is the discount and maxa'Q(s',a') is the maxQ value based on the random action taken.
-						Double sample = outcome2.localReward + (discount * updatedQValue);
-						// Add the new QValue onto the running average using the formula
-						// Q(s,a) = (1 - alpha) * Q(s,a) + alpha * Sample
-						Double QValue = (1 - alpha) * qTable.getQValue(outcome2.s, a2) + (alpha * sample);
-						qTable.addQValue(outcome2.s, a2, QValue);
-						}
+				try {
+					env2.step(cell, outcome);
+				} catch (IllegalMoveException e) {
+					e.printStackTrace();
+					break;
 				}
-			
-		}		
-		
-		//--------------------------------------------------------
-		//you shouldn't need to delete the following lines of code.
-		this.policy=extractPolicy();
-		if (this.policy==null) 
-		{
-			System.out.println("Unimplemented methods! First implement the train() & extractPolicy methods");
-			//System.exit(1);
+				
+				// Find the max of Q(s',a'), 0 if s' is terminal
+				double maxNext = outcome.done ? 0.0 : qValue(outcome.sPrime, bestCell(outcome.sPrime, catalog.legalMoves(outcome.sPrime)));
+				
+				// Sample = R(s,a,s') + gamma * maxa'Q(s',a')
+				// Q(s,a) = (1 - alpha) * Q(s,a) + alpha * Sample
+				updateQValue(s, cell, outcome.localReward + discount * maxNext);
+				s = outcome.sPrime;
+			}
 		}
+	}
 	
+	/**
+	 * @param id the {@link StateCatalog} id of a game where it's X's turn
+	 * @param moves a mask of the cells X can play there, not empty
+	 * @return the cell with the highest q-value, the last one of them if there are ties
+	 */
+	int bestCell(int id, long moves)
+	{
+		int best = Long.numberOfTrailingZeros(moves);
+		double max = qValue(id, best);
+		for(moves &= moves - 1; moves != 0; moves &= moves - 1) {
+			int cell = Long.numberOfTrailingZeros(moves);
+			double q = qValue(id, cell);
+			if (q >= max) {
+				max = q;
+				best = cell;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * @return Q(id, cell), read from the canonical game if {@link #symmetric}
+	 */
+	double qValue(int id, int cell)
+	{
+		if (!symmetric)
+			return qTable.get(id, cell);
+		Symmetry symmetry = Symmetry.get();
+		return qTable.get(symmetry.canonicalId(id), symmetry.transform(symmetry.toCanonical(id), cell));
+	}
+	
+	/**
+	 * {@link #updateQValue(Game, Move, double)} by id and cell
+	 */
+	double updateQValue(int id, int cell, double sample)
+	{
+		if (!symmetric)
+			return qTable.update(id, cell, alpha, sample);
+		Symmetry symmetry = Symmetry.get();
+		return qTable.update(symmetry.canonicalId(id), symmetry.transform(symmetry.toCanonical(id), cell), alpha, sample);
 	}
 		
 	
@@ -286,27 +405,30 @@ public class QLearningAgent extends Agent {
 	public Policy extractPolicy()
 	{
 		// Create a policy to output
-		Policy maxentry = new Policy();
-		// Create a set to hold all the games
-		Set<Entry<Game, HashMap<Move, Double>>> games = qTable.entrySet();
+		Policy maxentry = symmetric ? new SymmetricPolicy() : new Policy();
+		StateCatalog catalog = qTable.getCatalog();
+		BoardShape shape = catalog.getShape();
 			
 		// looping over games 
-		for(Entry<Game, HashMap<Move, Double>> g: games) {
+		for(int id = 0; id < catalog.size(); id++) {
 			
 			// Initialise variables
 			Double maxValue = -99.0;
 			Move maxMove = null;
-			// Loop over actions
-			Set<Entry<Move, Double>> actions = g.getValue().entrySet();
+			boolean hasValues = false;
 			// Find the max QValue and extract the action and move associated with it to detemine an optimal policy
-			for (Entry<Move, Double> a: actions) {
-					if (a.getValue() >= maxValue) {
-						maxValue  = a.getValue();
-						maxMove = a.getKey();
+			for (int cell = 0; cell < shape.cells; cell++) {
+					if (!qTable.has(id, cell))
+						continue;
+					hasValues = true;
+					if (qTable.get(id, cell) >= maxValue) {
+						maxValue  = qTable.get(id, cell);
+						maxMove = shape.move('X', cell);
 						}
 					}
 			// Update the policy to hold the max values
-			maxentry.policy.put(g.getKey(), maxMove);
+			if (hasValues)
+				maxentry.policy.put(catalog.position(id), maxMove);
 			}
 		// return the optimal policy
 		return maxentry;
@@ -1,41 +1,151 @@
 package ticTacToe;
 
-import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
-public class QTable extends HashMap<Game, HashMap<Move,Double>> {
+/**
+ * A table of q-values, one for each cell of each game in a {@link StateCatalog}. The values are kept in a single array
+ * at index {@code id*cells+cell}, for the catalog id of the game and the cell played, so reading or writing one creates
+ * no objects. Pairs that haven't been given a value hold NaN.
+ *
+ * The array is an {@link AtomicLongArray} of the bits of the doubles, so that several threads can learn into the same
+ * table without locks: see {@link #update(int, int, double, double)}.
+ *
+ * The methods taking a {@link Game} or a {@link Position} look up its id.
+ * @author ae187
+ *
+ */
+public class QTable
+{
 
-	
+	final StateCatalog catalog;
+
+	/**
+	 * cells of the board, the stride of {@link #values}
+	 */
+	private final int cells;
+
+	private final AtomicLongArray values;
+
+	/**
+	 * A table for the 3x3 board
+	 */
 	public QTable()
 	{
-		super();
+		this(StateCatalog.get());
 	}
-	
+
 	/**
-	 * 
+	 * A table for the games in {@code catalog}, all without values to begin with.
+	 * @param catalog
 	 */
-	private static final long serialVersionUID = 1L;
-	
-	
-	public Double getQValue(Game g, Move m)
+	public QTable(StateCatalog catalog)
 	{
-		if (containsKey(g))
+		long length=(long) catalog.size()*catalog.getShape().cells;
+		if (length>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("The "+catalog.getShape()+" board has too many games for a q-table");
+
+		this.catalog=catalog;
+		this.cells=catalog.getShape().cells;
+		this.values=new AtomicLongArray((int) length);
+		long none=Double.doubleToRawLongBits(Double.NaN);
+		for(int i=0; i<length; i++)
+			values.lazySet(i, none);
+	}
+
+	public StateCatalog getCatalog()
+	{
+		return catalog;
+	}
+
+	/**
+	 * @param id a {@link StateCatalog} id
+	 * @param cell
+	 * @return Q(id, cell), or NaN if it hasn't been given a value
+	 */
+	public double get(int id, int cell)
+	{
+		return Double.longBitsToDouble(values.get(id*cells+cell));
+	}
+
+	public void set(int id, int cell, double v)
+	{
+		values.set(id*cells+cell, Double.doubleToRawLongBits(v));
+	}
+
+	/**
+	 * Atomically moves Q(id, cell) towards {@code sample}: {@code Q=(1-alpha)*Q+alpha*sample}. Concurrent updates of the 
+	 * same pair are retried rather than lost, and updates of different pairs don't wait for each other.
+	 * @return the new value
+	 * @throws IllegalArgumentException if Q(id, cell) has no value
+	 */
+	public double update(int id, int cell, double alpha, double sample)
+	{
+		int i=id*cells+cell;
+		for(;;)
 		{
-			HashMap<Move,Double> moves=get(g);
-			if (moves.containsKey(m))
-				return moves.get(m);
+			long bits=values.get(i);
+			double q=Double.longBitsToDouble(bits);
+			if (Double.isNaN(q))
+				throw new IllegalArgumentException("No q-value for cell "+cell+" of game "+id);
+			double updated=(1-alpha)*q+alpha*sample;
+			if (values.compareAndSet(i, bits, Double.doubleToRawLongBits(updated)))
+				return updated;
 		}
-		
-		return null;
 	}
-	
+
+	/**
+	 * @return true if Q(id, cell) has a value
+	 */
+	public boolean has(int id, int cell)
+	{
+		return !Double.isNaN(get(id, cell));
+	}
+
+	public Double getQValue(Game g, Move m)
+	{
+		return getQValue(catalog.id(g), m);
+	}
+
+	public Double getQValue(Position p, Move m)
+	{
+		return getQValue(catalog.id(p), m);
+	}
+
+	/**
+	 * @return the value, or null if the game isn't in the catalog or the pair has no value
+	 */
+	private Double getQValue(int id, Move m)
+	{
+		BoardShape shape=catalog.getShape();
+		if (id<0 || !shape.contains(m.x, m.y))
+			return null;
+
+		double v=get(id, shape.cell(m));
+		return Double.isNaN(v) ? null : v;
+	}
+
+	/**
+	 * Sets Q(g, m)
+	 * @throws IllegalArgumentException if {@code g} isn't in the catalog
+	 */
 	public void addQValue(Game g, Move m, Double v)
 	{
-		if (!containsKey(g))
-			this.put(g, new HashMap<Move,Double>());
-		
-		this.get(g).put(m, v);
+		addQValue(catalog.id(g), m, v);
+	}
+
+	public void addQValue(Position p, Move m, Double v)
+	{
+		addQValue(catalog.id(p), m, v);
+	}
+
+	private void addQValue(int id, Move m, Double v)
+	{
+		BoardShape shape=catalog.getShape();
+		if (id<0 || !shape.contains(m.x, m.y))
+			throw new IllegalArgumentException("No q-value for "+m+" in a game that isn't in the catalog of "+shape+" games");
+
+		// null takes the value away again
+		set(id, shape.cell(m), v==null ? Double.NaN : v);
 	}
-	
-	
 
 }
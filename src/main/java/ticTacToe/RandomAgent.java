@@ -16,6 +16,13 @@ public class RandomAgent extends Agent {
 		
 	}
 	
+	/**
+	 * @param rng where the random moves come from
+	 */
+	public RandomAgent(Rng rng) {
+		super(new RandomPolicy(rng));
+	}
+	
 	
 
 }
@@ -1,10 +1,6 @@
 package ticTacToe;
 
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
-
 /**
  * This is a Policy which picks an move randomly with equal probability from the available moves. 
  * @author ae187
@@ -12,25 +8,25 @@ import java.util.Random;
  */
 public class RandomPolicy extends Policy{
 
-	Random r = new Random();
+	final Rng r;
+	
+	public RandomPolicy()
+	{
+		this(new Rng());
+	}
+	
+	/**
+	 * @param r where the random moves come from
+	 */
+	public RandomPolicy(Rng r)
+	{
+		this.r=r;
+	}
 	
 	@Override
 	public Move getMove(Game g) {
 		
-		
-		List<IndexPair> pairs=new ArrayList<IndexPair>();
-		
-		for(int i=0;i<3;i++)
-			for(int j=0;j<3;j++)
-			{
-				if (g.getBoard()[i][j]==' ')
-					pairs.add(new IndexPair(i,j));
-					
-			}
-		
-		IndexPair random=pairs.get(r.nextInt(pairs.size()));
-		
-		return new Move(g.whoseTurn, random.x, random.y);
+		return g.getShape().move(g.whoseTurn.getName(), r.nextCell(g.getLegalMoves()));
 	}
 	
 	
@@ -0,0 +1,88 @@
+package ticTacToe;
+
+import java.util.SplittableRandom;
+
+/**
+ * The source of randomness for policies, agents and environments, based on {@link SplittableRandom}. Every random
+ * policy or learner takes one in its constructor, and the constructors without one take a new one from
+ * {@link #Rng()}.
+ *
+ * Those all come from one root generator, so after {@link #setSeed(long)} a program that creates its agents in the same
+ * order makes the same random choices every time. An Rng isn't safe to share between threads: give each thread its own
+ * with {@link #split()}.
+ *
+ * @author ae187
+ *
+ */
+public class Rng {
+
+	/**
+	 * Where the generators made by {@link #Rng()} come from
+	 */
+	private static SplittableRandom root = new SplittableRandom();
+
+	private final SplittableRandom random;
+
+	/**
+	 * A generator split off the root one. Unpredictable unless {@link #setSeed(long)} has been called.
+	 */
+	public Rng() {
+		this(splitRoot());
+	}
+
+	/**
+	 * A generator of its own, independent of the root one
+	 */
+	public Rng(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	private Rng(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * Restarts the root generator, so that all the generators made by {@link #Rng()} from now on are reproducible.
+	 */
+	public static synchronized void setSeed(long seed) {
+		root = new SplittableRandom(seed);
+	}
+
+	private static synchronized SplittableRandom splitRoot() {
+		return root.split();
+	}
+
+	/**
+	 * @return a new generator, independent of this one, for another thread to use. Changes the state of this one.
+	 */
+	public Rng split() {
+		return new Rng(random.split());
+	}
+
+	/**
+	 * @return a number between 0 (inclusive) and bound (exclusive)
+	 */
+	public int nextInt(int bound) {
+		return random.nextInt(bound);
+	}
+
+	/**
+	 * @return a number between 0 (inclusive) and 1 (exclusive)
+	 */
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	/**
+	 * @param cells
+	 *            a cell mask, not empty
+	 * @return one of the cells in the mask, each with the same probability
+	 */
+	public int nextCell(long cells) {
+		// skip a random number of the cells
+		for (int skip = random.nextInt(Long.bitCount(cells)); skip > 0; skip--)
+			cells &= cells - 1;
+		return Long.numberOfTrailingZeros(cells);
+	}
+
+}
@@ -0,0 +1,440 @@
+package ticTacToe;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A catalog of every Tic Tac Toe game state that can come up in play, built once and shared by the whole process. These
+ * are the games reachable from the empty board, whichever agent starts. Games that are valid (see {@link Game#isValid()})
+ * but can't be reached, e.g. because play carried on after a win, aren't in the catalog.
+ *
+ * Each state has a dense id between 0 and {@link #size()}-1, a shared {@link Position} and a single shared {@link Game}
+ * instance, so value functions,
+ * policies and q-tables can be stored in plain arrays indexed by id instead of maps of duplicate boards. Both lookups, by
+ * id and by {@link Game#hashCode()}, are array accesses.
+ *
+ * Ids are ordered by the number of pieces on the board, so every move leads from a state to one with a larger id.
+ * 
+ * The catalog also precomputes the result of every move: {@link #successor(int, int)} gives the id of the state reached
+ * by playing a cell, and {@link #status(int)} its {@link Game#getState()}, so that search and dynamic programming can walk
+ * the game without creating any {@link Game} objects.
+ *
+ * The shared games must not be changed: {@link Game#executeMove} refuses to run on them. Clone them if you need a game
+ * to play on.
+ *
+ * {@link #get()} is the catalog of the 3x3 board; {@link #get(BoardShape)} builds one for any other board the first time
+ * it is asked for. Only the positions are stored, in primitive arrays, and the shared games are created when they are
+ * first asked for, so the catalog can hold the millions of states of e.g. the 4x4 board. On large boards the moves
+ * between states aren't tabulated but looked up in the catalog's index instead.
+ *
+ * @author ae187
+ *
+ */
+public class StateCatalog {
+
+	private static final StateCatalog INSTANCE = new StateCatalog(BoardShape.STANDARD);
+
+	/**
+	 * The catalogs of the other boards built so far
+	 */
+	private static final Map<BoardShape, StateCatalog> CATALOGS = new HashMap<BoardShape, StateCatalog>();
+
+	/**
+	 * The largest successor table built, in entries. Catalogs with more states times cells than this look successors up
+	 * in {@link #index} instead.
+	 */
+	static final long MAX_SUCCESSOR_TABLE = 1 << 23;
+
+	private final BoardShape shape;
+
+	/**
+	 * The positions of the games in order of id
+	 */
+	private final PositionIndex index;
+
+	/**
+	 * On the 3x3 board, idByHash[h] is the id of the game with hash h, or -1 if there is no such reachable game. Null on
+	 * other boards, whose hashes aren't unique.
+	 */
+	private final int[] idByHash;
+
+	/**
+	 * The shared games and positions, created when first asked for
+	 */
+	private final AtomicReferenceArray<Game> games;
+	private final AtomicReferenceArray<Position> positions;
+
+	/**
+	 * status[id] is the {@link Game#getState()} of the game with this id
+	 */
+	private final byte[] status;
+
+	/**
+	 * successors[cells*id+cell] is the id of the game reached when the agent whose turn it is plays cell, or -1 if the
+	 * cell is taken or the game is over. Null if the catalog is too large to tabulate them.
+	 */
+	private final int[] successors;
+
+	/**
+	 * The games (positions) where it's X's (O's) turn, or that are over, in order of id
+	 */
+	private final List<Game> xGames;
+	private final List<Game> oGames;
+	private final List<Position> xPositions;
+	private final List<Position> oPositions;
+
+	/**
+	 * The X and O agents bound to all the shared games
+	 */
+	private final Agent x = new Agent();
+	private final Agent o = new Agent();
+
+	private StateCatalog(BoardShape shape) {
+		this.shape = shape;
+		this.index = new PositionIndex();
+
+		// walk forward from the empty board, with either agent starting. The walk is
+		// breadth first, so ids come out in order of the number of pieces.
+		byte[] found = new byte[1 << 9];
+		index.add(0, 0, true);
+		index.add(0, 0, false);
+		for (int id = 0; id < index.size(); id++) {
+			long xBits = index.xBits(id);
+			long oBits = index.oBits(id);
+			if (id == found.length)
+				found = Arrays.copyOf(found, 2 * id);
+			found[id] = (byte) Game.status(shape, xBits, oBits);
+			if (found[id] != Game.ONGOING)
+				continue;
+
+			boolean xsTurn = index.xsTurn(id);
+			for (long free = ~(xBits | oBits) & shape.full; free != 0; free &= free - 1) {
+				long bit = free & -free;
+				if (xsTurn)
+					index.add(xBits | bit, oBits, false);
+				else
+					index.add(xBits, oBits | bit, true);
+			}
+		}
+
+		int size = index.size();
+		status = Arrays.copyOf(found, size);
+		games = new AtomicReferenceArray<Game>(size);
+		positions = new AtomicReferenceArray<Position>(size);
+
+		if ((long) size * shape.cells <= MAX_SUCCESSOR_TABLE) {
+			successors = new int[size * shape.cells];
+			for (int id = 0; id < size; id++)
+				for (int cell = 0; cell < shape.cells; cell++)
+					successors[shape.cells * id + cell] = lookUpSuccessor(id, cell);
+		} else
+			successors = null;
+
+		if (shape.equals(BoardShape.STANDARD)) {
+			idByHash = new int[Game.NUM_HASHES];
+			Arrays.fill(idByHash, -1);
+			for (int id = 0; id < size; id++)
+				idByHash[hash(id)] = id;
+		} else
+			idByHash = null;
+
+		int xs = 0;
+		int os = 0;
+		for (int id = 0; id < size; id++) {
+			if (index.xsTurn(id) || isTerminal(id))
+				xs++;
+			if (!index.xsTurn(id) || isTerminal(id))
+				os++;
+		}
+		int[] xIds = new int[xs];
+		int[] oIds = new int[os];
+		for (int id = 0, i = 0, j = 0; id < size; id++) {
+			if (index.xsTurn(id) || isTerminal(id))
+				xIds[i++] = id;
+			if (!index.xsTurn(id) || isTerminal(id))
+				oIds[j++] = id;
+		}
+		xGames = new GameList(xIds);
+		oGames = new GameList(oIds);
+		xPositions = new PositionList(xIds);
+		oPositions = new PositionList(oIds);
+	}
+
+	/**
+	 * @return the id of the game reached from the game with this id by playing cell, looked up in the index
+	 */
+	private int lookUpSuccessor(int id, int cell) {
+		long bit = 1L << cell;
+		long xBits = index.xBits(id);
+		long oBits = index.oBits(id);
+		if (status[id] != Game.ONGOING || ((xBits | oBits) & bit) != 0)
+			return -1;
+		if (index.xsTurn(id))
+			return index.get(xBits | bit, oBits, false);
+		else
+			return index.get(xBits, oBits | bit, true);
+	}
+
+	/**
+	 * @return the catalog of all reachable 3x3 games
+	 */
+	public static StateCatalog get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param shape
+	 * @return the catalog of all reachable games on boards of this shape. Built the first time it is asked for, which
+	 *         takes a while on boards larger than 3x3.
+	 */
+	public static StateCatalog get(BoardShape shape) {
+		if (shape.equals(BoardShape.STANDARD))
+			return INSTANCE;
+
+		synchronized (CATALOGS) {
+			StateCatalog catalog = CATALOGS.get(shape);
+			if (catalog == null) {
+				catalog = new StateCatalog(shape);
+				CATALOGS.put(shape, catalog);
+			}
+			return catalog;
+		}
+	}
+
+	/**
+	 * @return the board the games in this catalog are played on
+	 */
+	public BoardShape getShape() {
+		return shape;
+	}
+
+	/**
+	 * @return the number of states in the catalog
+	 */
+	public int size() {
+		return status.length;
+	}
+
+	/**
+	 * @param xo
+	 *            'X' or 'O'
+	 * @return the shared games where it's {@code xo}'s turn, or that are over, in order of id. The list can't be
+	 *         modified.
+	 */
+	public List<Game> gamesToMove(char xo) {
+		if (xo != 'X' && xo != 'O')
+			throw new IllegalArgumentException("Argument should be either 'X' or 'O'");
+		return xo == 'X' ? xGames : oGames;
+	}
+
+	/**
+	 * @param xo
+	 *            'X' or 'O'
+	 * @return the shared positions where it's {@code xo}'s turn, or that are over, in order of id. The list can't be
+	 *         modified.
+	 */
+	public List<Position> positionsToMove(char xo) {
+		if (xo != 'X' && xo != 'O')
+			throw new IllegalArgumentException("Argument should be either 'X' or 'O'");
+		return xo == 'X' ? xPositions : oPositions;
+	}
+
+	/**
+	 * @param id
+	 * @return the shared position with this id
+	 */
+	public Position position(int id) {
+		Position p = positions.get(id);
+		if (p != null)
+			return p;
+
+		p = new Position(shape, index.xBits(id), index.oBits(id), index.xsTurn(id), status[id]);
+		positions.compareAndSet(id, null, p);
+		return positions.get(id);
+	}
+
+	/**
+	 * @param id
+	 * @return the shared game with this id
+	 */
+	public Game game(int id) {
+		Game g = games.get(id);
+		if (g != null)
+			return g;
+
+		g = new Game(shape, x, o, index.xsTurn(id) ? x : o);
+		g.setBitboards(index.xBits(id), index.oBits(id));
+		g.shared = true;
+		g.position = position(id);
+		// if another thread got there first, use its game
+		games.compareAndSet(id, null, g);
+		return games.get(id);
+	}
+
+	/**
+	 * @param id
+	 * @return the {@link Game#getState()} of the game with this id: one of {@link Game#ONGOING}, {@link Game#X_WON},
+	 *         {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	public int status(int id) {
+		return status[id];
+	}
+
+	/**
+	 * @param id
+	 * @return true if the game with this id is over
+	 */
+	public boolean isTerminal(int id) {
+		return status[id] != Game.ONGOING;
+	}
+
+	/**
+	 * @param id
+	 * @return true if it's X's turn in the game with this id
+	 */
+	public boolean isXsTurn(int id) {
+		return index.xsTurn(id);
+	}
+
+	/**
+	 * @param id
+	 *            the id of the game
+	 * @param cell
+	 *            the cell played, {@code cols*x+y} for a move at (x, y)
+	 * @return the id of the game after the agent whose turn it is plays {@code cell}, or -1 if that isn't a legal move
+	 */
+	public int successor(int id, int cell) {
+		if (successors != null)
+			return successors[shape.cells * id + cell];
+		return lookUpSuccessor(id, cell);
+	}
+
+	/**
+	 * @param id
+	 * @return a mask with bit {@code cols*x+y} set for every legal move (x, y) in the game with this id. Empty if the
+	 *         game is over.
+	 */
+	public long legalMoves(int id) {
+		return status[id] != Game.ONGOING ? 0 : ~(index.xBits(id) | index.oBits(id)) & shape.full;
+	}
+
+	/**
+	 * @param id
+	 * @return the {@link Game#hashCode()} of the game with this id
+	 */
+	public int hash(int id) {
+		return shape.boardHash(index.xBits(id), index.oBits(id)) + (index.xsTurn(id) ? 1 : 2);
+	}
+
+	/**
+	 * @param hash
+	 *            a hash as returned by {@link Game#hashCode()}
+	 * @return the id of the game with this hash, or -1 if it isn't a reachable game
+	 * @throws UnsupportedOperationException
+	 *             on boards other than 3x3, where hashes aren't unique
+	 */
+	public int id(int hash) {
+		if (idByHash == null)
+			throw new UnsupportedOperationException("Games can only be looked up by hash on the 3x3 board");
+		if (hash < 0 || hash >= idByHash.length)
+			return -1;
+		return idByHash[hash];
+	}
+
+	/**
+	 * @param g
+	 * @return the id of {@code g}, or -1 if it isn't a reachable game on this catalog's board
+	 */
+	public int id(Game g) {
+		if (g.shape != shape && !g.shape.equals(shape))
+			return -1;
+		if (idByHash != null)
+			return idByHash[g.hashCode()];
+		return index.get(g.xBits, g.oBits, g.whoseTurn == g.x);
+	}
+
+	/**
+	 * @param p
+	 * @return the id of {@code p}, or -1 if it isn't a reachable position on this catalog's board
+	 */
+	public int id(Position p) {
+		if (p.shape != shape && !p.shape.equals(shape))
+			return -1;
+		if (idByHash != null)
+			return idByHash[p.hashCode()];
+		return index.get(p.xBits, p.oBits, p.xsTurn);
+	}
+
+	/**
+	 * @param xBits
+	 *            the cells taken by X
+	 * @param oBits
+	 *            the cells taken by O
+	 * @param xsTurn
+	 *            true if X is to play
+	 * @return the id of this position, or -1 if it isn't a reachable position. Creates no objects.
+	 */
+	public int id(long xBits, long oBits, boolean xsTurn) {
+		return index.get(xBits, oBits, xsTurn);
+	}
+
+	/**
+	 * @param g
+	 * @return the shared instance equal to {@code g}, or null if {@code g} isn't a reachable game
+	 */
+	public Game intern(Game g) {
+		int id = id(g);
+		return id < 0 ? null : game(id);
+	}
+
+	/**
+	 * A read only list of the shared positions with the given ids
+	 */
+	private class PositionList extends AbstractList<Position> {
+
+		private final int[] ids;
+
+		PositionList(int[] ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public Position get(int i) {
+			return position(ids[i]);
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+
+	}
+
+	/**
+	 * A read only list of the shared games with the given ids
+	 */
+	private class GameList extends AbstractList<Game> {
+
+		private final int[] ids;
+
+		GameList(int[] ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public Game get(int i) {
+			return game(ids[i]);
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+
+	}
+
+}
@@ -0,0 +1,107 @@
+package ticTacToe;
+
+import java.util.Arrays;
+
+/**
+ * A max priority queue of state ids, holding each state at most once. This is a binary heap over primitive arrays with
+ * the position of every state in the heap, so that the priority of a queued state can be raised in place rather than
+ * adding it again.
+ *
+ * @author ae187
+ *
+ */
+class StateQueue {
+
+	private final int[] heap;
+	private int size = 0;
+
+	/**
+	 * where[s] is the index of state s in the heap, or -1 if it isn't queued
+	 */
+	private final int[] where;
+
+	private final double[] priority;
+
+	/**
+	 * @param states
+	 *            the number of state ids: states are 0 to states-1
+	 */
+	StateQueue(int states) {
+		heap = new int[states];
+		where = new int[states];
+		priority = new double[states];
+		Arrays.fill(where, -1);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the highest priority in the queue, or 0 if it is empty
+	 */
+	double maxPriority() {
+		return size == 0 ? 0 : priority[heap[0]];
+	}
+
+	/**
+	 * Queues s with priority p, or raises its priority to p if it is queued with a lower one.
+	 */
+	void raise(int s, double p) {
+		if (where[s] < 0) {
+			where[s] = size;
+			heap[size++] = s;
+		} else if (p <= priority[s])
+			return;
+		priority[s] = p;
+		up(where[s]);
+	}
+
+	/**
+	 * Takes the state with the highest priority off the queue.
+	 *
+	 * @return the state
+	 */
+	int poll() {
+		int s = heap[0];
+		where[s] = -1;
+		int last = heap[--size];
+		if (size > 0) {
+			heap[0] = last;
+			where[last] = 0;
+			down(0);
+		}
+		return s;
+	}
+
+	private void up(int i) {
+		int s = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (priority[heap[parent]] >= priority[s])
+				break;
+			move(heap[parent], i);
+			i = parent;
+		}
+		move(s, i);
+	}
+
+	private void down(int i) {
+		int s = heap[i];
+		for (int child = 2 * i + 1; child < size; child = 2 * i + 1) {
+			if (child + 1 < size && priority[heap[child + 1]] > priority[heap[child]])
+				child++;
+			if (priority[heap[child]] <= priority[s])
+				break;
+			move(heap[child], i);
+			i = child;
+		}
+		move(s, i);
+	}
+
+	private void move(int s, int i) {
+		heap[i] = s;
+		where[s] = i;
+	}
+
+}
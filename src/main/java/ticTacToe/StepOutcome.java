@@ -0,0 +1,52 @@
+package ticTacToe;
+
+/**
+ * The result of one {@link TTTEnvironment#step(int, StepOutcome)}: an (s,a,r,s') tuple like {@link Outcome}, but with the
+ * states given by their {@link StateCatalog} ids and hashes instead of as games. A training loop keeps one of these and
+ * passes it to every step, so stepping creates no objects.
+ * 
+ * @author ae187
+ *
+ */
+public class StepOutcome {
+
+	/**
+	 * the {@link StateCatalog} id of the source state
+	 */
+	public int s;
+
+	/**
+	 * the {@link Game#hashCode()} of the source state
+	 */
+	public int sHash;
+
+	/**
+	 * the cell X played, {@code cols*x+y} for a move at (x, y)
+	 */
+	public int cell;
+
+	/**
+	 * reward received
+	 */
+	public double localReward;
+
+	/**
+	 * the {@link StateCatalog} id of the state after the opponent's reply, or after X's move if that ended the game
+	 */
+	public int sPrime;
+
+	/**
+	 * the {@link Game#hashCode()} of {@link #sPrime}
+	 */
+	public int sPrimeHash;
+
+	/**
+	 * true if the game is over in {@link #sPrime}
+	 */
+	public boolean done;
+
+	public String toString() {
+		return "s=" + s + " cell=" + cell + " reward=" + localReward + " s'=" + sPrime + (done ? " (done)" : "");
+	}
+
+}
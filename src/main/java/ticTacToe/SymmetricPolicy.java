@@ -0,0 +1,34 @@
+package ticTacToe;
+
+import java.util.HashMap;
+
+/**
+ * A policy that only stores moves for canonical games (see {@link Symmetry}). Any other game is looked up through its
+ * canonical game, and the move found there is rotated/reflected back onto the game asked about.
+ * @author ae187
+ *
+ */
+public class SymmetricPolicy extends Policy {
+
+	/**
+	 * Create policy according to this map, whose keys should be canonical positions
+	 * @param policy
+	 */
+	public SymmetricPolicy(HashMap<Position, Move> policy) {
+		super(policy);
+	}
+
+	public SymmetricPolicy()
+	{}
+
+	@Override
+	public Move getMove(Position p) {
+		Symmetry symmetry=Symmetry.get();
+		Move m=super.getMove(symmetry.canonical(p));
+		if (m==null)
+			return null;
+
+		return symmetry.fromCanonical(p, m);
+	}
+
+}
@@ -0,0 +1,260 @@
+package ticTacToe;
+
+/**
+ * The eight symmetries of the Tic Tac Toe board (the four rotations and four reflections) and the canonical
+ * representative of every game under them.
+ *
+ * Games that are rotations or reflections of each other have the same value and, up to the same rotation/reflection,
+ * the same best moves. Agents can therefore learn over canonical games only: map a game to its canonical one with
+ * {@link #canonical(Game)}, map moves into the canonical game with {@link #toCanonical(Game, Move)}, and map moves chosen
+ * there back with {@link #fromCanonical(Game, Move)}. This cuts the number of states by about 8.
+ *
+ * The canonical game of a class of symmetric games is the one with the smallest {@link StateCatalog} id.
+ *
+ * Only the 3x3 board is covered: games on other boards (see {@link BoardShape}) are their own canonical game.
+ *
+ * @author ae187
+ *
+ */
+public class Symmetry {
+
+	private static final Symmetry INSTANCE = new Symmetry(StateCatalog.get());
+
+	/**
+	 * The number of symmetries, including the identity.
+	 */
+	public static final int NUM_TRANSFORMS = 8;
+
+	/**
+	 * The transform that leaves the board as it is.
+	 */
+	public static final int IDENTITY = 0;
+
+	private final StateCatalog catalog;
+
+	/**
+	 * cellMap[t][c] is the cell that cell c is moved to by transform t
+	 */
+	private final int[][] cellMap = new int[NUM_TRANSFORMS][9];
+
+	/**
+	 * inverse[t] is the transform that undoes transform t
+	 */
+	private final int[] inverse = new int[NUM_TRANSFORMS];
+
+	/**
+	 * canonicalId[id] is the id of the canonical game of the game with this id
+	 */
+	private final int[] canonicalId;
+
+	/**
+	 * toCanonical[id] is the transform that turns the game with this id into its canonical game
+	 */
+	private final byte[] toCanonical;
+
+	private Symmetry(StateCatalog catalog) {
+		this.catalog = catalog;
+
+		for (int t = 0; t < NUM_TRANSFORMS; t++)
+			for (int x = 0; x < 3; x++)
+				for (int y = 0; y < 3; y++)
+					cellMap[t][3 * x + y] = transformCell(t, x, y);
+
+		for (int t = 0; t < NUM_TRANSFORMS; t++)
+			for (int u = 0; u < NUM_TRANSFORMS; u++) {
+				boolean undoes = true;
+				for (int c = 0; c < 9; c++)
+					undoes &= cellMap[u][cellMap[t][c]] == c;
+				if (undoes)
+					inverse[t] = u;
+			}
+
+		canonicalId = new int[catalog.size()];
+		toCanonical = new byte[catalog.size()];
+		for (int id = 0; id < catalog.size(); id++) {
+			Game g = catalog.game(id);
+			boolean xsTurn = catalog.isXsTurn(id);
+			canonicalId[id] = id;
+			for (int t = 1; t < NUM_TRANSFORMS; t++) {
+				int image = catalog.id(Game.hash(transformMask(t, g.xBits), transformMask(t, g.oBits), xsTurn));
+				if (image < canonicalId[id]) {
+					canonicalId[id] = image;
+					toCanonical[id] = (byte) t;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the cell that (x, y) is moved to by transform t
+	 */
+	private static int transformCell(int t, int x, int y) {
+		switch (t) {
+		case 1:// rotate by 90 degrees
+			return 3 * y + (2 - x);
+		case 2:// rotate by 180 degrees
+			return 3 * (2 - x) + (2 - y);
+		case 3:// rotate by 270 degrees
+			return 3 * (2 - y) + x;
+		case 4:// mirror left to right
+			return 3 * x + (2 - y);
+		case 5:// mirror top to bottom
+			return 3 * (2 - x) + y;
+		case 6:// reflect in the main diagonal
+			return 3 * y + x;
+		case 7:// reflect in the other diagonal
+			return 3 * (2 - y) + (2 - x);
+		default:
+			return 3 * x + y;
+		}
+	}
+
+	/**
+	 * @return the symmetries of the 3x3 board
+	 */
+	public static Symmetry get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param t
+	 *            a transform, between 0 and {@link #NUM_TRANSFORMS}-1
+	 * @param cell
+	 * @return the cell that {@code cell} is moved to by transform t
+	 */
+	public int transform(int t, int cell) {
+		return cellMap[t][cell];
+	}
+
+	/**
+	 * @return the transform that undoes transform t
+	 */
+	public int inverse(int t) {
+		return inverse[t];
+	}
+
+	/**
+	 * @return the cell mask {@code mask} moved by transform t
+	 */
+	long transformMask(int t, long mask) {
+		long result = 0;
+		for (; mask != 0; mask &= mask - 1)
+			result |= 1L << cellMap[t][Long.numberOfTrailingZeros(mask)];
+		return result;
+	}
+
+	/**
+	 * @param id
+	 *            a {@link StateCatalog} id
+	 * @return the id of the canonical game of the game with this id
+	 */
+	public int canonicalId(int id) {
+		return canonicalId[id];
+	}
+
+	/**
+	 * @param id
+	 *            a {@link StateCatalog} id
+	 * @return the transform that turns the game with this id into its canonical game
+	 */
+	public int toCanonical(int id) {
+		return toCanonical[id];
+	}
+
+	/**
+	 * @param g
+	 * @return the shared canonical game of {@code g}. Games that aren't valid are their own canonical game.
+	 */
+	public Game canonical(Game g) {
+		int id = catalog.id(g);
+		if (id < 0)
+			return g;
+		return catalog.game(canonicalId[id]);
+	}
+
+	/**
+	 * @param p
+	 * @return the shared canonical position of {@code p}. Positions that aren't valid are their own canonical position.
+	 */
+	public Position canonical(Position p) {
+		int id = catalog.id(p);
+		if (id < 0)
+			return p;
+		return catalog.position(canonicalId[id]);
+	}
+
+	/**
+	 * @param g
+	 * @return true if {@code g} is its own canonical game
+	 */
+	public boolean isCanonical(Game g) {
+		int id = catalog.id(g);
+		return id < 0 || canonicalId[id] == id;
+	}
+
+	/**
+	 * @param p
+	 * @return true if {@code p} is its own canonical position
+	 */
+	public boolean isCanonical(Position p) {
+		int id = catalog.id(p);
+		return id < 0 || canonicalId[id] == id;
+	}
+
+	/**
+	 * @param m
+	 * @param t
+	 * @return the move {@code m} moved by transform t
+	 */
+	public Move transform(Move m, int t) {
+		if (t == IDENTITY)
+			return m;
+		int cell = cellMap[t][3 * m.x + m.y];
+		return Move.of(m.getMark(), cell);
+	}
+
+	/**
+	 * @param g
+	 * @param m
+	 *            a move in {@code g}
+	 * @return the corresponding move in the canonical game of {@code g}
+	 */
+	public Move toCanonical(Game g, Move m) {
+		int id = catalog.id(g);
+		return id < 0 ? m : transform(m, toCanonical[id]);
+	}
+
+	/**
+	 * @param p
+	 * @param m
+	 *            a move in {@code p}
+	 * @return the corresponding move in the canonical position of {@code p}
+	 */
+	public Move toCanonical(Position p, Move m) {
+		int id = catalog.id(p);
+		return id < 0 ? m : transform(m, toCanonical[id]);
+	}
+
+	/**
+	 * @param g
+	 * @param m
+	 *            a move in the canonical game of {@code g}
+	 * @return the corresponding move in {@code g}
+	 */
+	public Move fromCanonical(Game g, Move m) {
+		int id = catalog.id(g);
+		return id < 0 ? m : transform(m, inverse[toCanonical[id]]);
+	}
+
+	/**
+	 * @param p
+	 * @param m
+	 *            a move in the canonical position of {@code p}
+	 * @return the corresponding move in {@code p}
+	 */
+	public Move fromCanonical(Position p, Move m) {
+		int id = catalog.id(p);
+		return id < 0 ? m : transform(m, inverse[toCanonical[id]]);
+	}
+
+}
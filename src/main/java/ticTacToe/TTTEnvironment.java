@@ -21,6 +21,11 @@ public class TTTEnvironment {
 	 */
 	Game game;
 	
+	/**
+	 * The games of this environment's board, to give states ids by. Looked up on the first {@link #step}.
+	 */
+	private StateCatalog catalog;
+	
 	
 	double winReward=10.0;
 	double loseReward=-50.0;
@@ -42,6 +47,20 @@ public class TTTEnvironment {
 		game=new Game(new Agent(), opponent);
 	}
 	
+	/**
+	 * An environment on a board of the given shape, with a {@link RandomAgent} as the opponent.
+	 * @param shape
+	 */
+	public TTTEnvironment(BoardShape shape)
+	{
+		this(shape, new RandomAgent());
+	}
+	
+	public TTTEnvironment(BoardShape shape, Agent opponent)
+	{
+		game=new Game(shape, new Agent(), opponent);
+	}
+	
 	public TTTEnvironment(Agent opponent, double winReward, double loseReward, double livingReward, double drawReward)
 	{
 		game=new Game(new Agent(), opponent);
@@ -57,6 +76,14 @@ public class TTTEnvironment {
 		return game;
 	}
 	
+	/**
+	 * @return the board the games in this environment are played on
+	 */
+	public BoardShape getShape()
+	{
+		return game.getShape();
+	}
+	
 	public List<Move> getPossibleMoves()
 	{
 		List<Move> moves=new ArrayList<Move>();
@@ -130,6 +157,85 @@ public class TTTEnvironment {
 		
 	}
 	
+	/**
+	 * Starts a new episode on the same game object: empties the board and gives X the first move. Creates no objects.
+	 */
+	public void reset()
+	{
+		game.setBitboards(0, 0);
+		game.whoseTurn=game.x;
+	}
+	
+	/**
+	 * @return the {@link StateCatalog} id of the current game state
+	 */
+	public int getStateId()
+	{
+		return getCatalog().id(game);
+	}
+	
+	/**
+	 * @return a mask of the cells X can play, 0 if it is not X's turn or the game is over
+	 */
+	public long getLegalMoves()
+	{
+		return game.whoseTurn==game.x ? game.getLegalMoves() : 0;
+	}
+	
+	/**
+	 * {@link #executeMove} without creating any objects: plays X's move and the opponent's reply on the current game, and 
+	 * writes the outcome into {@code out}, with the states as {@link StateCatalog} ids. Only the opponent's policy may 
+	 * create objects, and the default {@link RandomAgent} doesn't.
+	 * @param cell the cell X plays, {@code cols*x+y} for a move at (x, y)
+	 * @param out where the outcome goes. Overwritten.
+	 * @throws IllegalMoveException if the cell isn't free, or the opponent replies with an illegal move
+	 * @throws IllegalStateException if the game is already over; call {@link #reset()} first
+	 */
+	public void step(int cell, StepOutcome out) throws IllegalMoveException
+	{
+		if (game.isTerminal())
+			throw new IllegalStateException("The episode is over. Call reset() first.");
+		if (cell<0 || cell>=game.shape.cells || (getLegalMoves() & (1L<<cell))==0)
+			throw new IllegalMoveException("Illegal Move: cell "+cell+" on:"+game);
+		
+		StateCatalog games=getCatalog();
+		out.s=games.id(game);
+		out.sHash=game.hashCode();
+		out.cell=cell;
+		
+		game.makeMove(cell);
+		if (game.getState()==Game.X_WON)
+			out.localReward=this.winReward;
+		else if (game.getState()==Game.DRAW)
+			out.localReward=this.drawReward;
+		else
+		{
+			//the game is ongoing. So now it's the opponent's turn to play.
+			Move oMove=game.o.getMove(game);
+			if (!game.isLegal(oMove))
+				throw new IllegalMoveException("Illegal Move:"+oMove+" on:"+game);
+			game.makeMove(game.shape.cell(oMove));
+			
+			if (game.getState()==Game.O_WON)
+				out.localReward=this.loseReward;
+			else if (game.getState()==Game.DRAW)
+				out.localReward=this.drawReward;
+			else
+				out.localReward=this.livingReward;
+		}
+		
+		out.sPrime=games.id(game);
+		out.sPrimeHash=game.hashCode();
+		out.done=game.isTerminal();
+	}
+	
+	private StateCatalog getCatalog()
+	{
+		if (catalog==null)
+			catalog=StateCatalog.get(game.getShape());
+		return catalog;
+	}
+	
 	public boolean isTerminal()
 	{
 		return game.isTerminal();
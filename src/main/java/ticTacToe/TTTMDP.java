@@ -2,7 +2,10 @@ package ticTacToe;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class specifies a full MDP for the Tic Tac Toe game, i.e. the Transition Function, T, and the Reward Function R as per your lectures.
@@ -26,12 +29,53 @@ public class TTTMDP {
 	double livingReward=-1.00;
 	double drawReward=0.0;
 	
-	public TTTMDP() {
+	/**
+	 * The board the game is played on
+	 */
+	final BoardShape shape;
+	
+	/**
+	 * All valid games and the moves between them, precomputed. Used to generate transitions without simulating moves.
+	 * Built on first use, see {@link #getCatalog()}.
+	 */
+	private volatile StateCatalog catalog;
+	
+	/**
+	 * The compiled models, built on first use. See {@link #compile(boolean)}.
+	 */
+	private CompiledMDP compiled;
+	private CompiledMDP compiledSymmetric;
+	
+	/**
+	 * Transitions already generated, keyed on {@code cells*id+cell} for the {@link StateCatalog} id of the game and the 
+	 * cell played, least recently used first. Null unless turned on with {@link #setCacheSize(int)}.
+	 */
+	private LinkedHashMap<Long, List<TransitionProb>> cache;
+	
+	private long cacheHits=0;
+	private long cacheMisses=0;
 	
+	public TTTMDP() {
+		this(BoardShape.STANDARD);
 		
 	}
 
+	/**
+	 * The MDP of the game on a board of this shape. All the valid games on the board are enumerated the first time 
+	 * anything needs them; {@link #generateTransitions(long, long, int, TransitionBuffer)} doesn't, so it can be used
+	 * on boards too large to enumerate.
+	 * @param shape
+	 */
+	public TTTMDP(BoardShape shape) {
+		this.shape=shape;
+	}
+
 	public TTTMDP(double win, double lose, double live, double draw) {
+		this(BoardShape.STANDARD, win, lose, live, draw);
+	}
+
+	public TTTMDP(BoardShape shape, double win, double lose, double live, double draw) {
+		this(shape);
 		this.winReward=win;
 		this.loseReward=lose;
 		this.livingReward=live;
@@ -44,6 +88,12 @@ public class TTTMDP {
 	 * probabilities. 
 	 * This essentially gives you a uniform probability distribution over all possible resulting game states and rewards when making move {@code m} 
 	 * in game {@code g}. This is implemented for you to use in your Value Iteration and Policy Iteration implementations. 
+	 * 
+	 * The target games in the outcomes are the shared {@link StateCatalog} instances: don't execute moves on them.
+	 * 
+	 * If the cache is on (see {@link #setCacheSize(int)}), lists are remembered and returned again for the same game and
+	 * move. Those lists can't be modified, and their source game is the shared {@link StateCatalog} instance rather than
+	 * {@code g}.
 	 * @param g
 	 * @param m
 	 * @return
@@ -58,6 +108,320 @@ public class TTTMDP {
 			throw new IllegalStateException("Value Iteration Agent is playing O. This will lead to unexpected results. It shouldn't happen.");
 		}
 		
+		StateCatalog catalog=getCatalog();
+		int id=catalog.id(g);
+		if (id<0 || catalog.isTerminal(id))
+			return simulateTransitions(g, m);
+		
+		if (cache==null || !shape.contains(m.x, m.y))
+			return catalogTransitions(g, id, m);
+		
+		Long key=(long)shape.cells*id+shape.cell(m);
+		synchronized(this)
+		{
+			if (cache!=null)
+			{
+				List<TransitionProb> cached=cache.get(key);
+				if (cached!=null)
+				{
+					cacheHits++;
+					return cached;
+				}
+				cacheMisses++;
+			}
+		}
+		
+		List<TransitionProb> result=Collections.unmodifiableList(catalogTransitions(catalog.game(id), id, m));
+		synchronized(this)
+		{
+			// illegal moves aren't remembered, so that they are warned about every time
+			if (cache!=null && !result.isEmpty())
+				cache.put(key, result);
+		}
+		return result;
+		
+	}
+	
+	/**
+	 * Generates the transitions from the precomputed game graph, for a game in the {@link StateCatalog} that isn't over.
+	 * @param id the {@link StateCatalog} id of g
+	 */
+	private List<TransitionProb> catalogTransitions(Game g, int id, Move m)
+	{
+		List<TransitionProb> result=new ArrayList<TransitionProb>();
+		StateCatalog catalog=getCatalog();
+		int intermediate=shape.contains(m.x, m.y) ? catalog.successor(id, shape.cell(m)) : -1;
+		if (intermediate<0)
+		{
+			System.out.println("WARNING: illegal move "+m+" tried when generating transitions. Returning empty list.");
+			return result;
+		}
+		
+		//X won or drew: the game is over, nothing for the opponent to do.
+		if (catalog.isTerminal(intermediate))
+		{
+			Outcome o=new Outcome(g, m, reward(catalog.status(intermediate)), catalog.game(intermediate));
+			result.add(new TransitionProb(o, 1.0));
+			return result;
+		}
+		
+		//equal chance that the opponent will move into any of the available places.
+		long replies=catalog.legalMoves(intermediate);
+		double prob=(double)1/Long.bitCount(replies);
+		for(; replies!=0; replies&=replies-1)
+		{
+			int next=catalog.successor(intermediate, Long.numberOfTrailingZeros(replies));
+			Outcome o=new Outcome(g, m, reward(catalog.status(next)), catalog.game(next));
+			result.add(new TransitionProb(o, prob));
+		}
+		
+		return result;
+		
+	}
+	
+	/**
+	 * Turns the transitions cache on or off. Off by default.
+	 * @param maxEntries the number of (game, move) transition lists to keep. The least recently used one is dropped when 
+	 * there are more. 0 turns the cache off and empties it.
+	 */
+	public synchronized void setCacheSize(final int maxEntries)
+	{
+		if (maxEntries<0)
+			throw new IllegalArgumentException("The cache size can't be negative");
+		
+		if (maxEntries==0)
+		{
+			cache=null;
+			return;
+		}
+		
+		LinkedHashMap<Long, List<TransitionProb>> resized=new LinkedHashMap<Long, List<TransitionProb>>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, List<TransitionProb>> eldest)
+			{
+				return size()>maxEntries;
+			}
+		};
+		if (cache!=null)
+			resized.putAll(cache);
+		cache=resized;
+	}
+	
+	/**
+	 * @return the number of transition lists in the cache
+	 */
+	public synchronized int getCacheSize()
+	{
+		return cache==null ? 0 : cache.size();
+	}
+	
+	/**
+	 * @return the number of calls to {@link #generateTransitions(Game, Move)} answered from the cache
+	 */
+	public synchronized long getCacheHits()
+	{
+		return cacheHits;
+	}
+	
+	/**
+	 * @return the number of calls to {@link #generateTransitions(Game, Move)} that looked in the cache and had to 
+	 * generate the transitions
+	 */
+	public synchronized long getCacheMisses()
+	{
+		return cacheMisses;
+	}
+	
+	/**
+	 * Empties the cache and resets its counters. The cache stays on.
+	 */
+	public synchronized void clearCache()
+	{
+		if (cache!=null)
+			cache.clear();
+		cacheHits=0;
+		cacheMisses=0;
+	}
+	
+	/**
+	 * {@link #generateTransitions(Game, Move)} from a position. The source games in the outcomes are the shared 
+	 * {@link StateCatalog} games of the position.
+	 * @param p
+	 * @param m
+	 * @return
+	 */
+	public List<TransitionProb> generateTransitions(Position p, Move m)
+	{
+		StateCatalog catalog=getCatalog();
+		int id=catalog.id(p);
+		Game g=id<0 ? new Game(p, new Agent(), new Agent()) : catalog.game(id);
+		return generateTransitions(g, m);
+	}
+	
+	/**
+	 * {@link #generateTransitions(Game, Move)} without creating any objects: the transitions go into a buffer the caller 
+	 * owns and reuses, straight from the bitboards, so this works on boards too large to enumerate and doesn't need the
+	 * {@link StateCatalog}.
+	 * @param xBits the cells taken by X, in a game where it is X's turn
+	 * @param oBits the cells taken by O
+	 * @param cell the cell X plays, {@code cols*x+y} for a move at (x, y)
+	 * @param out the buffer to fill, for a board of this MDP's shape. Its previous contents are dropped.
+	 * @return the number of transitions, 0 if the game is already over or {@code cell} isn't free
+	 */
+	public int generateTransitions(long xBits, long oBits, int cell, TransitionBuffer out)
+	{
+		if (!out.shape.equals(shape))
+			throw new IllegalArgumentException("The buffer is for a "+out.shape+" board, not "+shape);
+		out.clear();
+		if (Game.status(shape, xBits, oBits)!=Game.ONGOING)
+			return 0;
+		return fillTransitions(xBits, oBits, cell, out);
+	}
+	
+	/**
+	 * {@link #generateTransitions(long, long, int, TransitionBuffer)} from a position
+	 * @param p a position where it is X's turn
+	 * @param m X's move
+	 * @param out
+	 * @return the number of transitions, 0 if the game is already over or the move isn't legal
+	 */
+	public int generateTransitions(Position p, Move m, TransitionBuffer out)
+	{
+		if (p.whoseTurn()!=m.getMark())
+			throw new IllegalArgumentException("It's not "+m.getMark()+"'s turn in game. This shouldn't happen!");
+		if (m.getMark()=='O')
+			throw new IllegalStateException("Value Iteration Agent is playing O. This will lead to unexpected results. It shouldn't happen.");
+		if (!out.shape.equals(shape) || !p.shape.equals(shape))
+			throw new IllegalArgumentException("The position and buffer should be on a "+shape+" board");
+		out.clear();
+		if (p.isTerminal() || !shape.contains(m.x, m.y))
+			return 0;
+		return fillTransitions(p.xBits, p.oBits, shape.cell(m), out);
+	}
+	
+	/**
+	 * Fills {@code out}, which is empty, with the transitions of X playing {@code cell} in an ongoing game.
+	 */
+	private int fillTransitions(long xBits, long oBits, int cell, TransitionBuffer out)
+	{
+		if (cell<0 || cell>=shape.cells)
+			return 0;
+		long bit=1L<<cell;
+		if (((xBits|oBits)&bit)!=0)
+			return 0;
+		
+		//X won or drew: the game is over, nothing for the opponent to do.
+		long x=xBits|bit;
+		long taken=x|oBits;
+		if (shape.hasLineThrough(x, cell))
+		{
+			out.add(x, oBits, false, Game.X_WON, 1.0, winReward);
+			return out.size();
+		}
+		if (taken==shape.full)
+		{
+			out.add(x, oBits, false, Game.DRAW, 1.0, drawReward);
+			return out.size();
+		}
+		
+		//equal chance that the opponent will move into any of the available places.
+		long replies=~taken&shape.full;
+		double prob=(double)1/Long.bitCount(replies);
+		for(; replies!=0; replies&=replies-1)
+		{
+			int reply=Long.numberOfTrailingZeros(replies);
+			long o=oBits|(1L<<reply);
+			int state=shape.hasLineThrough(o, reply) ? Game.O_WON : (x|o)==shape.full ? Game.DRAW : Game.ONGOING;
+			out.add(x, o, true, state, prob, reward(state));
+		}
+		return out.size();
+	}
+	
+	/**
+	 * @param gameState the {@link Game#getState()} of the game transitioned into
+	 * @return the reward received when transitioning into a game in this state
+	 */
+	public double reward(int gameState)
+	{
+		switch(gameState)
+		{
+		case Game.X_WON:
+			return this.winReward;
+		case Game.O_WON:
+			return this.loseReward;
+		case Game.DRAW:
+			return this.drawReward;
+		default:
+			return this.livingReward;
+		}
+	}
+	
+	/**
+	 * Walks the precomputed game graph without creating any games. See {@link StateCatalog#successor(int, int)}.
+	 * @param stateId the {@link StateCatalog} id of a game
+	 * @param cell the cell played, {@code cols*x+y} for a move at (x, y)
+	 * @return the id of the game reached when the agent whose turn it is plays {@code cell}, or -1 if that isn't legal
+	 */
+	public int successor(int stateId, int cell)
+	{
+		return getCatalog().successor(stateId, cell);
+	}
+	
+	/**
+	 * @return this MDP compiled into flat arrays, see {@link CompiledMDP}. Built the first time it's asked for and then 
+	 * shared, so don't change the rewards afterwards.
+	 */
+	public CompiledMDP compile()
+	{
+		return compile(false);
+	}
+	
+	/**
+	 * @param symmetric if true, the model only has transitions into canonical states (see {@link Symmetry}). Ignored on
+	 * boards other than 3x3.
+	 * @return this MDP compiled into flat arrays, see {@link CompiledMDP}
+	 */
+	public synchronized CompiledMDP compile(boolean symmetric)
+	{
+		if (symmetric)
+		{
+			if (compiledSymmetric==null)
+				compiledSymmetric=new CompiledMDP(this, true);
+			return compiledSymmetric;
+		}
+		if (compiled==null)
+			compiled=new CompiledMDP(this, false);
+		return compiled;
+	}
+	
+	/**
+	 * @return the board this MDP is played on
+	 */
+	public BoardShape getShape()
+	{
+		return shape;
+	}
+	
+	/**
+	 * @return all the valid games and the moves between them, enumerated the first time this is called
+	 */
+	public StateCatalog getCatalog()
+	{
+		StateCatalog c=catalog;
+		if (c==null)
+			catalog=c=StateCatalog.get(shape);
+		return c;
+	}
+	
+	/**
+	 * Generates the transitions by simulating the moves. Used for games that the {@link StateCatalog} can't walk, i.e. 
+	 * invalid games and games that are already over.
+	 */
+	private List<TransitionProb> simulateTransitions(Game g, Move m)
+	{
 		List<TransitionProb> result=new ArrayList<TransitionProb>();
 		//first simulate move m
 		
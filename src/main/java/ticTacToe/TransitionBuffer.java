@@ -0,0 +1,124 @@
+package ticTacToe;
+
+/**
+ * A reusable holder for the transitions of one (state, move) pair, filled in by
+ * {@link TTTMDP#generateTransitions(long, long, int, TransitionBuffer)}. Transition i goes to the position with bitboards
+ * {@link #xBits(int)} and {@link #oBits(int)}, with probability {@link #prob(int)} and reward {@link #reward(int)}. The
+ * transitions are kept in parallel arrays sized for the board, so generating transitions into a buffer creates no
+ * objects, however many times it is reused.
+ *
+ * @author ae187
+ *
+ */
+public class TransitionBuffer {
+
+	final BoardShape shape;
+
+	private final long[] xBits;
+	private final long[] oBits;
+	private final boolean[] xsTurn;
+	private final int[] state;
+	private final double[] prob;
+	private final double[] reward;
+
+	private int size = 0;
+
+	/**
+	 * @param shape
+	 *            the board the transitions will be on
+	 */
+	public TransitionBuffer(BoardShape shape) {
+		this.shape = shape;
+		// at most one transition per reply, and there are fewer replies than cells
+		xBits = new long[shape.cells];
+		oBits = new long[shape.cells];
+		xsTurn = new boolean[shape.cells];
+		state = new int[shape.cells];
+		prob = new double[shape.cells];
+		reward = new double[shape.cells];
+	}
+
+	public BoardShape getShape() {
+		return shape;
+	}
+
+	/**
+	 * @return the number of transitions in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	void add(long x, long o, boolean xToPlay, int gameState, double p, double r) {
+		xBits[size] = x;
+		oBits[size] = o;
+		xsTurn[size] = xToPlay;
+		state[size] = gameState;
+		prob[size] = p;
+		reward[size] = r;
+		size++;
+	}
+
+	/**
+	 * @return the cells taken by X after transition i
+	 */
+	public long xBits(int i) {
+		return xBits[i];
+	}
+
+	/**
+	 * @return the cells taken by O after transition i
+	 */
+	public long oBits(int i) {
+		return oBits[i];
+	}
+
+	/**
+	 * @return true if it is X's turn after transition i
+	 */
+	public boolean xsTurn(int i) {
+		return xsTurn[i];
+	}
+
+	/**
+	 * @return the state of the game after transition i: one of {@link Game#ONGOING}, {@link Game#X_WON},
+	 *         {@link Game#O_WON} or {@link Game#DRAW}
+	 */
+	public int state(int i) {
+		return state[i];
+	}
+
+	public double prob(int i) {
+		return prob[i];
+	}
+
+	public double reward(int i) {
+		return reward[i];
+	}
+
+	/**
+	 * @return the {@link Game#hashCode()} of the game after transition i
+	 */
+	public int hash(int i) {
+		return shape.boardHash(xBits[i], oBits[i]) + (xsTurn[i] ? 1 : 2);
+	}
+
+	/**
+	 * @return the {@link StateCatalog} id of the game after transition i, or -1 if it isn't in the catalog
+	 */
+	public int id(int i, StateCatalog catalog) {
+		return catalog.id(xBits[i], oBits[i], xsTurn[i]);
+	}
+
+	/**
+	 * @return the position after transition i. Unlike the other methods this creates an object.
+	 */
+	public Position position(int i) {
+		return new Position(shape, xBits[i], oBits[i], xsTurn[i], state[i]);
+	}
+
+}
@@ -0,0 +1,172 @@
+package ticTacToe;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The values of a set of states, stored in a {@code double[]} indexed by {@link StateCatalog} id, the same layout the
+ * sweeps of a {@link CompiledMDP} work on. Ids outside the set keep the value 0.
+ *
+ * {@link #asMap()} gives a read-only {@link Map} view from the {@link Position} of every state in the set to its value,
+ * for code that looks values up by position.
+ *
+ * @author ae187
+ *
+ */
+public class ValueFunction {
+
+	private final StateCatalog catalog;
+
+	/**
+	 * The ids of the states, in increasing order
+	 */
+	private final int[] states;
+
+	private final double[] values;
+
+	private final Map<Position, Double> view = new MapView();
+
+	/**
+	 * @param catalog
+	 * @param states
+	 *            the ids of the states that have values, in increasing order. Not copied, and must not be changed.
+	 */
+	ValueFunction(StateCatalog catalog, int[] states) {
+		this.catalog = catalog;
+		this.states = states;
+		this.values = new double[catalog.size()];
+	}
+
+	/**
+	 * The values of the states of a compiled model, all 0 to begin with.
+	 */
+	public ValueFunction(CompiledMDP model) {
+		this(model.getCatalog(), model.states());
+	}
+
+	public StateCatalog getCatalog() {
+		return catalog;
+	}
+
+	/**
+	 * @return the number of states that have values
+	 */
+	public int size() {
+		return states.length;
+	}
+
+	/**
+	 * @return the value of state {@code id}
+	 */
+	public double get(int id) {
+		return values[id];
+	}
+
+	public void set(int id, double value) {
+		values[id] = value;
+	}
+
+	/**
+	 * @return the values themselves, indexed by id, for the sweeps to update in place
+	 */
+	double[] values() {
+		return values;
+	}
+
+	/**
+	 * Copies values indexed by id in, unless they are already this value function's own array.
+	 */
+	void setAll(double[] from) {
+		if (from != values)
+			System.arraycopy(from, 0, values, 0, values.length);
+	}
+
+	/**
+	 * @return true if state {@code id} is one of the states that have values
+	 */
+	public boolean contains(int id) {
+		return Arrays.binarySearch(states, id) >= 0;
+	}
+
+	/**
+	 * @return a read-only view of the values keyed on the positions of the states. It reflects later changes to the
+	 *         values.
+	 */
+	public Map<Position, Double> asMap() {
+		return view;
+	}
+
+	private class MapView extends AbstractMap<Position, Double> {
+
+		private final Set<Entry<Position, Double>> entries = new AbstractSet<Entry<Position, Double>>() {
+
+			@Override
+			public Iterator<Entry<Position, Double>> iterator() {
+				return new Iterator<Entry<Position, Double>>() {
+					private int i = 0;
+
+					@Override
+					public boolean hasNext() {
+						return i < states.length;
+					}
+
+					@Override
+					public Entry<Position, Double> next() {
+						if (i >= states.length)
+							throw new NoSuchElementException();
+						int id = states[i++];
+						return new SimpleImmutableEntry<Position, Double>(catalog.position(id), values[id]);
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return states.length;
+			}
+		};
+
+		@Override
+		public Set<Entry<Position, Double>> entrySet() {
+			return entries;
+		}
+
+		@Override
+		public int size() {
+			return states.length;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return id(key) >= 0;
+		}
+
+		@Override
+		public Double get(Object key) {
+			int id = id(key);
+			return id < 0 ? null : values[id];
+		}
+
+		/**
+		 * @return the id of the key if it is the position of one of the states, otherwise -1
+		 */
+		private int id(Object key) {
+			if (!(key instanceof Position))
+				return -1;
+			int id = catalog.id((Position) key);
+			return id >= 0 && contains(id) ? id : -1;
+		}
+
+	}
+
+}
@@ -1,14 +1,10 @@
 package ticTacToe;
 
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A Value Iteration Agent, only very partially implemented. The methods to implement are: 
@@ -22,9 +18,14 @@ import java.util.Set;
 public class ValueIterationAgent extends Agent {
 
 	/**
-	 * This map is used to store the values of states
+	 * The values of the states, indexed by state id
 	 */
-	Map<Game, Double> valueFunction=new HashMap<Game, Double>();
+	ValueFunction stateValues;
+	
+	/**
+	 * A read-only view of {@link #stateValues}, keyed on the positions of the states
+	 */
+	Map<Position, Double> valueFunction=Collections.emptyMap();
 	
 	/**
 	 * the discount factor
@@ -37,10 +38,47 @@ public class ValueIterationAgent extends Agent {
 	TTTMDP mdp=new TTTMDP();
 	
 	/**
-	 * the number of iterations to perform - feel free to change this/try out different numbers of iterations
+	 * the most sweeps to perform - feel free to change this/try out different numbers of iterations. Value iteration
+	 * usually stops well before this, once the residual drops to {@link #theta}.
 	 */
 	int k=50;
 	
+	/**
+	 * Value iteration stops after a sweep whose Bellman residual (see {@link #residual}) is at most theta
+	 */
+	double theta=1e-6;
+	
+	/**
+	 * If true (and {@link #parallelism} is 1), values are updated in place (Gauss-Seidel), so a backup already sees the 
+	 * new values of the states swept before it. States are swept in decreasing id order, and since every move leads to a
+	 * larger id the successors of a state are usually up to date by the time it is backed up. If false, sweeps are 
+	 * synchronous (Jacobi), as they always are with several threads.
+	 */
+	boolean gaussSeidel=true;
+	
+	/**
+	 * If true, only canonical games (see {@link Symmetry}) are stored in {@link #valueFunction}, and other games take
+	 * the value of their canonical game.
+	 */
+	boolean symmetric=false;
+	
+	/**
+	 * The number of threads to sweep with. With more than one, sweeps are synchronous (Jacobi): every new value is computed
+	 * from the values of the previous sweep, split over a {@link ForkJoinPool}, so the result is the same however many 
+	 * threads there are. With one, see {@link #gaussSeidel}.
+	 */
+	int parallelism=1;
+	
+	/**
+	 * The Bellman residual of the last sweep: the largest change in any value.
+	 */
+	double residual=Double.NaN;
+	
+	/**
+	 * The number of sweeps the last call to {@link #iterate()} performed
+	 */
+	int sweeps=0;
+	
 	
 	/**
 	 * This constructor trains the agent offline first and sets its policy
@@ -73,19 +111,79 @@ public class ValueIterationAgent extends Agent {
 	}
 	
 	/**
-	 * Initialises the {@link ValueIterationAgent#valueFunction} map, and sets the initial value of all states to 0 
-	 * (V0 from the lectures). Uses {@link Game#inverseHash} and {@link Game#generateAllValidGames(char)} to do this. 
-	 * 
+	 * @param discountFactor
+	 * @param symmetric if true, learn over canonical games only. See {@link #symmetric}.
 	 */
-	public void initValues()
-	{
+	public ValueIterationAgent(double discountFactor, boolean symmetric) {
 		
-		List<Game> allGames=Game.generateAllValidGames('X');//all valid games where it is X's turn, or it's terminal.
-		for(Game g: allGames)
-			this.valueFunction.put(g, 0.0);
+		this.discount=discountFactor;
+		this.symmetric=symmetric;
+		mdp=new TTTMDP();
+		initValues();
+		train();
+	}
+	
+	/**
+	 * Use this constructor to plan with the given MDP, e.g. one on a larger board (see {@link TTTMDP#TTTMDP(BoardShape)}).
+	 * @param mdp
+	 * @param discountFactor
+	 */
+	public ValueIterationAgent(TTTMDP mdp, double discountFactor) {
 		
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		initValues();
+		train();
+	}
+	
+	/**
+	 * Use this constructor to plan with the given MDP, sweeping with several threads. See {@link #parallelism}.
+	 * @param mdp
+	 * @param discountFactor
+	 * @param parallelism the number of threads
+	 */
+	public ValueIterationAgent(TTTMDP mdp, double discountFactor, int parallelism) {
 		
+		if (parallelism<1)
+			throw new IllegalArgumentException("parallelism should be at least 1");
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		this.parallelism=parallelism;
+		initValues();
+		train();
+	}
+	
+	/**
+	 * Use this constructor to choose when value iteration stops, and how it sweeps.
+	 * @param mdp
+	 * @param discountFactor
+	 * @param theta stop once the Bellman residual of a sweep is at most this. See {@link #theta}.
+	 * @param maxSweeps stop after this many sweeps in any case
+	 * @param gaussSeidel true to update values in place, false for synchronous sweeps. See {@link #gaussSeidel}.
+	 */
+	public ValueIterationAgent(TTTMDP mdp, double discountFactor, double theta, int maxSweeps, boolean gaussSeidel) {
 		
+		if (theta<0 || maxSweeps<1)
+			throw new IllegalArgumentException("theta should be at least 0 and maxSweeps at least 1");
+		this.discount=discountFactor;
+		this.mdp=mdp;
+		this.theta=theta;
+		this.k=maxSweeps;
+		this.gaussSeidel=gaussSeidel;
+		initValues();
+		train();
+	}
+	
+	/**
+	 * Initialises {@link #stateValues} and the {@link ValueIterationAgent#valueFunction} map, and sets the initial value 
+	 * of all states to 0 (V0 from the lectures). The states are those of the compiled {@link #mdp}: all valid positions 
+	 * where it is X's turn, or it's terminal, and only canonical ones if {@link #symmetric}.
+	 * 
+	 */
+	public void initValues()
+	{
+		stateValues=new ValueFunction(mdp.compile(symmetric));
+		valueFunction=stateValues.asMap();
 	}
 	
 	
@@ -100,63 +198,103 @@ public class ValueIterationAgent extends Agent {
 	 
 	
 	/*
-	 * Performs {@link #k} value iteration steps. After running this method, the {@link ValueIterationAgent#valueFunction} map should contain
+	 * Performs value iteration steps until the residual is at most {@link #theta}, or {@link #k} of them have been done.
+	 * After running this method, the {@link ValueIterationAgent#valueFunction} map should contain
 	 * the (current) values of each reachable state. You should use the {@link TTTMDP} provided to do this.
 	 * 
 	 *
 	 */
 	public void iterate()
 	
-	// ***** THS METHOD PERFORS K ITERATIONS STEPS TO DETERMINE THE VALUES OF EACH REACHABLE STEP ***** //
+	// ***** THS METHOD PERFORMS ITERATION STEPS TO DETERMINE THE VALUES OF EACH REACHABLE STEP ***** //
 	{
-		for(int j = 0; j < k; j++){
+		// the sweeps run on the compiled model, over values indexed by state id
+		CompiledMDP model=mdp.compile(symmetric);
+		double[] values=loadValues(model);
+		sweeps=0;
+		residual=Double.NaN;
+		
+		if (parallelism>1 || !gaussSeidel)
+		{
+			storeValues(model, iterateSynchronous(model, values));
+			return;
+		}
+		
+		int[] states=model.states();
+		do {
 			
-			/* Retrieve the current entry states */
-			Set<Entry<Game, Double>> entryS = valueFunction.entrySet();
-
-			/* loop over all the states */
-			for(Entry<Game, Double> g: entryS){								
-				
-				/* Initialise a variable to hold the expectimax value */ 
-				double max = 0.0;	
-				
-				// Get the key corresponding to current game
-				Game gs = g.getKey();
-				// Store all the possible actions based on the current game in a list
-				List<Move> actions = gs.getPossibleMoves();	
-				// Create a list to store all the updated policy values
-				List<Double> a = new ArrayList<Double>();	
-				// Get the current move
-	
-				// loop over all the actions in the list actions
-				for(Move b: actions){						
-					// Retrieve the transition probability of the current mdp and store it in a list
-					List<TransitionProb> tProbability = mdp.generateTransitions(gs, b);					
-					double vks1 = 0.0;																		
-					
-					// Loop over the list of transition probabilities
-					for (TransitionProb tp: tProbability) {
-						
-						// Retrieve the values to compute vks+1 = Sum of T(s,pi(s),s') [R(s,pi(s),s') + gamma * vk(s') 
-						int ta = tProbability.indexOf(tp);
-						TransitionProb currentTProbability = tp;
-						double r = tProbability.get(ta).outcome.localReward;
-						double t = tProbability.get(ta).prob;																		
-						double sPrime = valueFunction.get(currentTProbability.outcome.sPrime);
-						vks1 = vks1 + t * (r + (discount * sPrime));															
-					}
-					
-					// add the newly calculated policy value to the list a
-					// max stores the max of a
-					a.add(vks1);											
-					max = Collections.max(a);									 
-				}
-				//clear list a
-				// add the max value to the value function along with the game key
-				a.clear();													
-				valueFunction.put(gs, max);								
+			/* loop over all the states, last id first, updating their values in place */
+			residual=0;
+			for(int i=states.length-1; i>=0; i--)
+			{
+				int s=states[i];
+				double v=model.bestValue(s, values, discount);
+				residual=Math.max(residual, Math.abs(v-values[s]));
+				values[s]=v;
 			}
+			sweeps++;
+		} while (residual>theta && sweeps<k);
+		
+		storeValues(model, values);
+	}
+	
+	/**
+	 * Performs synchronous sweeps, split over {@link #parallelism} threads if there is more than one, alternating between
+	 * two arrays of values.
+	 * @return the values after the last sweep
+	 */
+	double[] iterateSynchronous(CompiledMDP model, double[] values)
+	{
+		double[] next=values.clone();
+		ForkJoinPool pool=parallelism>1 ? new ForkJoinPool(parallelism) : null;
+		try
+		{
+			do {
+				residual=model.sweep(values, next, discount, pool);
+				sweeps++;
+				double[] swap=values;
+				values=next;
+				next=swap;
+			} while (residual>theta && sweeps<k);
 		}
+		finally
+		{
+			if (pool!=null)
+				pool.shutdown();
+		}
+		return values;
+	}
+	
+	/**
+	 * @return the number of sweeps the last value iteration performed
+	 */
+	public int getSweeps()
+	{
+		return sweeps;
+	}
+	
+	/**
+	 * @return the Bellman residual of the last sweep: the largest change in any value
+	 */
+	public double getResidual()
+	{
+		return residual;
+	}
+	
+	/**
+	 * @return the values in {@link #stateValues}, indexed by state id. Sweeps may update them in place.
+	 */
+	double[] loadValues(CompiledMDP model)
+	{
+		return stateValues.values();
+	}
+	
+	/**
+	 * Writes values indexed by state id back into {@link #stateValues}
+	 */
+	void storeValues(CompiledMDP model, double[] values)
+	{
+		stateValues.setAll(values);
 	}
 	
 	/**This method should be run AFTER the train method to extract a policy according to {@link ValueIterationAgent#valueFunction}
@@ -168,55 +306,16 @@ public class ValueIterationAgent extends Agent {
 	public Policy extractPolicy()
 	{
 		// Create a new policy
-		Policy p = new Policy();
-		/* Retrieve the current entry states */
-		Set<Entry<Game, Double>> entryS = valueFunction.entrySet();
+		Policy p = symmetric ? new SymmetricPolicy() : new Policy();
+		CompiledMDP model=mdp.compile(symmetric);
+		StateCatalog catalog=model.getCatalog();
+		double[] values=loadValues(model);
 
-		/* loop over all the states */
-		for(Entry<Game, Double> g: entryS){								
-			
-			/* Initialise a variable to hold the expectimax value */ 
-			double max = 0.0;	
-			
-			// Get the key corresponding to current game
-			Game gs = g.getKey();
-			// Store all the possible actions based on the current game in a list
-			List<Move> actions = gs.getPossibleMoves();	
-			// Create a list to store all the updated policy values
-			List<Double> a = new ArrayList<Double>();	
-			// Get the current move
-
-			// loop over all the actions in the list actions
-			for(Move b: actions){						
-				// Retrieve the transition probability of the current mdp and store it in a list
-				List<TransitionProb> tProbability = mdp.generateTransitions(gs, b);					
-				double vks1 = 0.0;																		
-				
-				// Loop over the list of transition probabilities
-				for (TransitionProb tp: tProbability) {
-					
-					// Retrieve the values to compute vks+1 = Sum of T(s,pi(s),s') [R(s,pi(s),s') + gamma * vk(s') 
-					int ta = tProbability.indexOf(tp);
-					TransitionProb currentTProbability = tp;
-					double r = tProbability.get(ta).outcome.localReward;
-					double t = tProbability.get(ta).prob;																		
-					double sPrime = valueFunction.get(currentTProbability.outcome.sPrime);
-					vks1 = vks1 + t * (r + (discount * sPrime));															
-				}
-				
-				// add the newly calculated policy value to the list a
-				// max stores the max of a
-				a.add(vks1);											
-				max = Collections.max(a);		
-				
-				// If the new value is the max, add the key of the current game state and the move to the policy
-				if(vks1 == max) {
-					p.policy.put(gs,b);
-				}
-			}
-			//clear list a
-			// add the max value to the value function along with the game key
-			a.clear();																			
+		/* a single step of expectimax from every state that has moves */
+		for(int s: model.states()){
+			int best=model.bestAction(s, values, discount);
+			if (best>=0)
+				p.policy.put(catalog.position(s), model.move(best));
 		}
 		// return the policy
 		return p;
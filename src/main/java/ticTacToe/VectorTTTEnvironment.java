@@ -0,0 +1,205 @@
+package ticTacToe;
+
+/**
+ * N independent games of the {@link TTTEnvironment}, stepped together. The games are kept as arrays of bitboards and
+ * {@link StateCatalog} ids rather than as {@link Game} objects, and {@link #step(int[], double[], int[], boolean[])}
+ * plays one move in every game and writes the results into arrays the caller owns, so a batch learner steps N games per
+ * call without creating any objects.
+ *
+ * As in {@link TTTEnvironment}, the learner plays X, and the opponent, O, is part of the environment: it plays uniformly
+ * at random, like a {@link RandomAgent}. Between steps it is always X's turn in every game. A game that ends is started
+ * again straight away.
+ *
+ * @author ae187
+ *
+ */
+public class VectorTTTEnvironment {
+
+	final BoardShape shape;
+
+	private final StateCatalog catalog;
+
+	/**
+	 * the current state of game i: its bitboards and its catalog id
+	 */
+	private final long[] xBits;
+	private final long[] oBits;
+	private final int[] ids;
+
+	/**
+	 * the id of the empty board with X to play
+	 */
+	private final int startId;
+
+	private final Rng random;
+
+	double winReward = 10.0;
+	double loseReward = -50.0;
+	double livingReward = -1.00;
+	double drawReward = 0.0;
+
+	/**
+	 * n games on the 3x3 board
+	 */
+	public VectorTTTEnvironment(int n) {
+		this(BoardShape.STANDARD, n);
+	}
+
+	/**
+	 * @param shape
+	 *            the board, which needs a {@link StateCatalog}
+	 * @param n
+	 *            the number of games
+	 */
+	public VectorTTTEnvironment(BoardShape shape, int n) {
+		this(shape, n, new Rng());
+	}
+
+	/**
+	 * @param shape
+	 *            the board, which needs a {@link StateCatalog}
+	 * @param n
+	 *            the number of games
+	 * @param rng
+	 *            where the opponent's moves come from
+	 */
+	public VectorTTTEnvironment(BoardShape shape, int n, Rng rng) {
+		if (n < 1)
+			throw new IllegalArgumentException("There should be at least one game");
+		this.shape = shape;
+		this.catalog = StateCatalog.get(shape);
+		this.xBits = new long[n];
+		this.oBits = new long[n];
+		this.ids = new int[n];
+		this.startId = catalog.id(0, 0, true);
+		this.random = rng;
+		reset();
+	}
+
+	public VectorTTTEnvironment(BoardShape shape, int n, double winReward, double loseReward, double livingReward,
+			double drawReward) {
+		this(shape, n);
+		this.winReward = winReward;
+		this.loseReward = loseReward;
+		this.livingReward = livingReward;
+		this.drawReward = drawReward;
+	}
+
+	/**
+	 * @return the number of games
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	public BoardShape getShape() {
+		return shape;
+	}
+
+	public StateCatalog getCatalog() {
+		return catalog;
+	}
+
+	/**
+	 * Starts every game again from the empty board.
+	 */
+	public void reset() {
+		for (int i = 0; i < ids.length; i++)
+			reset(i);
+	}
+
+	private void reset(int i) {
+		xBits[i] = 0;
+		oBits[i] = 0;
+		ids[i] = startId;
+	}
+
+	/**
+	 * @return the {@link StateCatalog} id of the current state of game i
+	 */
+	public int stateId(int i) {
+		return ids[i];
+	}
+
+	/**
+	 * Copies the ids of the current states into {@code out}, which has at least {@link #size()} elements.
+	 */
+	public void stateIds(int[] out) {
+		System.arraycopy(ids, 0, out, 0, ids.length);
+	}
+
+	public long xBits(int i) {
+		return xBits[i];
+	}
+
+	public long oBits(int i) {
+		return oBits[i];
+	}
+
+	/**
+	 * @return a mask of the cells X can play in game i
+	 */
+	public long legalMoves(int i) {
+		return ~(xBits[i] | oBits[i]) & shape.full;
+	}
+
+	/**
+	 * Plays X's move and the opponent's reply in every game. Games that end are started again afterwards, so the
+	 * next state reported for them is the final state of the game, but their current state is the empty board.
+	 *
+	 * @param actions
+	 *            the cell X plays in each game, {@code cols*x+y} for a move at (x, y)
+	 * @param rewards
+	 *            where the reward of each game goes
+	 * @param nextIds
+	 *            where the {@link StateCatalog} id of the state each game reached goes
+	 * @param dones
+	 *            where true goes for the games that ended
+	 * @throws IllegalArgumentException
+	 *             if an action isn't a free cell. The games before it have already been stepped.
+	 */
+	public void step(int[] actions, double[] rewards, int[] nextIds, boolean[] dones) {
+		for (int i = 0; i < ids.length; i++) {
+			int cell = actions[i];
+			if (cell < 0 || cell >= shape.cells || (legalMoves(i) & (1L << cell)) == 0)
+				throw new IllegalArgumentException("Game " + i + " can't play cell " + cell);
+
+			long x = xBits[i] | (1L << cell);
+			long o = oBits[i];
+			int next = catalog.successor(ids[i], cell);
+			boolean done = true;
+			double reward;
+			if (shape.hasLineThrough(x, cell))
+				reward = winReward;
+			else if ((x | o) == shape.full)
+				reward = drawReward;
+			else {
+				// the opponent replies on a random free cell
+				int reply = random.nextCell(~(x | o) & shape.full);
+				o |= 1L << reply;
+				next = catalog.successor(next, reply);
+
+				if (shape.hasLineThrough(o, reply))
+					reward = loseReward;
+				else if ((x | o) == shape.full)
+					reward = drawReward;
+				else {
+					reward = livingReward;
+					done = false;
+				}
+			}
+
+			rewards[i] = reward;
+			dones[i] = done;
+			nextIds[i] = next;
+			if (done)
+				reset(i);
+			else {
+				xBits[i] = x;
+				oBits[i] = o;
+				ids[i] = next;
+			}
+		}
+	}
+
+}
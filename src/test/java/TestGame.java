@@ -0,0 +1,426 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ticTacToe.Agent;
+import ticTacToe.BoardShape;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
+import ticTacToe.Position;
+import ticTacToe.StateCatalog;
+import ticTacToe.Symmetry;
+import ticTacToe.TTTMDP;
+import ticTacToe.TransitionBuffer;
+import ticTacToe.TransitionProb;
+
+public class TestGame {
+
+	/**
+	 * Straightforward evaluation of a board, as the game used to do it: rows, then
+	 * columns, then diagonals, then a scan for empty cells.
+	 */
+	static int referenceState(char[][] b) {
+		int[][][] lines = { { { 0, 0 }, { 0, 1 }, { 0, 2 } }, { { 1, 0 }, { 1, 1 }, { 1, 2 } },
+				{ { 2, 0 }, { 2, 1 }, { 2, 2 } }, { { 0, 0 }, { 1, 0 }, { 2, 0 } }, { { 0, 1 }, { 1, 1 }, { 2, 1 } },
+				{ { 0, 2 }, { 1, 2 }, { 2, 2 } }, { { 0, 0 }, { 1, 1 }, { 2, 2 } }, { { 2, 0 }, { 1, 1 }, { 0, 2 } } };
+		for (int[][] l : lines) {
+			char c = b[l[0][0]][l[0][1]];
+			if (c != ' ' && c == b[l[1][0]][l[1][1]] && c == b[l[2][0]][l[2][1]])
+				return c == 'X' ? Game.X_WON : Game.O_WON;
+		}
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				if (b[i][j] == ' ')
+					return Game.ONGOING;
+
+		return Game.DRAW;
+	}
+
+	@Test
+	public void testEvaluateMatchesReference() {
+		for (int h = 0; h < Game.NUM_HASHES; h++) {
+			Game g = Game.inverseHash(h);
+			if (g == null)
+				continue;
+			assertEquals("hash " + h, referenceState(g.getBoard()), g.evaluateGameState());
+		}
+	}
+
+	/**
+	 * The original string based hash.
+	 */
+	static int referenceHash(Game g, boolean xsTurn) {
+		String s = "";
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				s += g.getBoard()[i][j] == 'X' ? "1" : g.getBoard()[i][j] == 'O' ? "2" : "0";
+		s += xsTurn ? "1" : "2";
+		return Integer.parseInt(s, 3);
+	}
+
+	@Test
+	public void testHashIsInverseOfInverseHash() {
+		for (int h = 0; h < Game.NUM_HASHES; h++) {
+			Game g = Game.inverseHash(h);
+			if (g == null)
+				continue;
+			assertEquals(h, g.hashCode());
+			assertEquals(h, referenceHash(g, h % 3 == 1));
+		}
+	}
+
+	@Test
+	public void testHashFollowsMoves() throws IllegalMoveException {
+		Game g = new Game();
+		g.executeMove('X', 0, 1);
+		Game next = g.simulateMove(new Move('O', 2, 2));
+		next.executeMove('X', 1, 0);
+
+		assertEquals(referenceHash(g, false), g.hashCode());
+		assertEquals(referenceHash(next, false), next.hashCode());
+		assertEquals(next, Game.inverseHash(next.hashCode()));
+		assertEquals(next.hashCode(), next.clone().hashCode());
+	}
+
+	static void collectReachable(Game g, Set<Integer> seen) {
+		if (!seen.add(g.hashCode()) || g.isTerminal())
+			return;
+		for (Game next : g.getAllSuccessorGames())
+			collectReachable(next, seen);
+	}
+
+	@Test
+	public void testCatalogHoldsReachableGames() {
+		Set<Integer> reachable = new HashSet<Integer>();
+		collectReachable(new Game('X'), reachable);
+		collectReachable(new Game('O'), reachable);
+		// 5478 positions when X starts, as many again when O does
+		assertEquals(2 * 5478, reachable.size());
+
+		StateCatalog catalog = StateCatalog.get();
+		assertEquals(reachable.size(), catalog.size());
+		for (int h = 0; h < Game.NUM_HASHES; h++) {
+			if (!reachable.contains(h)) {
+				assertEquals(-1, catalog.id(h));
+				continue;
+			}
+			Game g = Game.inverseHash(h);
+			int id = catalog.id(g);
+			assertEquals(h, catalog.hash(id));
+			assertEquals(g, catalog.game(id));
+			assertSame(catalog.game(id), catalog.intern(g));
+			assertEquals(g.evaluateGameState(), catalog.game(id).getState());
+		}
+
+		// every move leads to a state with a larger id
+		for (int id = 0; id < catalog.size(); id++)
+			if (!catalog.isTerminal(id))
+				for (Game next : catalog.game(id).getAllSuccessorGames())
+					assertTrue(catalog.id(next) > id);
+
+		for (Game g : Game.generateAllValidGames('X'))
+			assertTrue(g.isTerminal() || g.getPossibleMoves().get(0).getMark() == 'X');
+	}
+
+	@Test
+	public void testSuccessorTableMatchesSimulation() throws IllegalMoveException {
+		StateCatalog catalog = StateCatalog.get();
+		for (int id = 0; id < catalog.size(); id++) {
+			Game g = catalog.game(id);
+			assertEquals(g.getState(), catalog.status(id));
+			char turn = catalog.hash(id) % 3 == 1 ? 'X' : 'O';
+			for (int cell = 0; cell < 9; cell++) {
+				Move m = new Move(turn, cell / 3, cell % 3);
+				boolean legal = !g.isTerminal() && g.isLegal(m);
+				assertEquals(legal, (catalog.legalMoves(id) & (1 << cell)) != 0);
+				if (!legal) {
+					assertEquals(-1, catalog.successor(id, cell));
+					continue;
+				}
+				Game next = g.simulateMove(m);
+				assertSame(catalog.intern(next), catalog.game(catalog.successor(id, cell)));
+				assertEquals(next.getState(), catalog.status(catalog.successor(id, cell)));
+			}
+		}
+	}
+
+	@Test
+	public void testSymmetryMapsGamesAndMoves() throws IllegalMoveException {
+		StateCatalog catalog = StateCatalog.get();
+		Symmetry symmetry = Symmetry.get();
+		int canonical = 0;
+		for (int id = 0; id < catalog.size(); id++) {
+			Game g = catalog.game(id);
+			Game c = symmetry.canonical(g);
+			assertTrue(symmetry.isCanonical(c));
+			assertTrue(catalog.id(c) <= id);
+			// not getState(): on boards where both X and O have a line, which one wins
+			// depends on the order the lines are checked in
+			assertEquals(g.isTerminal(), c.isTerminal());
+			if (c == g)
+				canonical++;
+
+			// a move in g and its image in the canonical game lead to symmetric games
+			for (Move m : g.getPossibleMoves()) {
+				Move cm = symmetry.toCanonical(g, m);
+				assertTrue(c.isLegal(cm));
+				assertEquals(m, symmetry.fromCanonical(g, cm));
+				assertSame(symmetry.canonical(g.simulateMove(m)), symmetry.canonical(c.simulateMove(cm)));
+			}
+		}
+		assertTrue(canonical * 6 < catalog.size());
+	}
+
+	@Test
+	public void testSharedMoves() throws IllegalMoveException {
+		Game g = new Game();
+		g.executeMove('X', 0, 0);
+		for (Move m : g.getPossibleMoves()) {
+			assertSame(Move.of('O', m.getCell()), m);
+			assertEquals(new Move('O', m.x, m.y), m);
+			assertEquals(new Move('O', m.x, m.y).hashCode(), m.hashCode());
+		}
+		assertEquals(0x1FEL, g.getLegalMoves());
+		assertTrue(!Move.of('X', 4).equals(Move.of('O', 4)));
+	}
+
+	static void assertSameGame(Game expected, Game actual) {
+		assertEquals(expected.hashCode(), actual.hashCode());
+		assertEquals(expected.getState(), actual.getState());
+		assertEquals(expected.getLegalMoves(), actual.getLegalMoves());
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				assertEquals(expected.getBoard()[i][j], actual.getBoard()[i][j]);
+	}
+
+	/**
+	 * Walks the whole game tree below g in place, checking every node against
+	 * simulateMove and that unmakeMove restores the game.
+	 */
+	static int walk(Game g) throws IllegalMoveException {
+		int nodes = 1;
+		for (long free = g.getLegalMoves(); free != 0; free &= free - 1) {
+			int cell = Long.numberOfTrailingZeros(free);
+			Game before = g.clone();
+			Game expected = g.simulateMove(g.getPossibleMoves().get(0).getMark(), cell / 3, cell % 3);
+			g.makeMove(cell);
+			assertSameGame(expected, g);
+			nodes += walk(g);
+			g.unmakeMove(cell);
+			assertSameGame(before, g);
+		}
+		return nodes;
+	}
+
+	@Test
+	public void testMakeUnmakeMove() throws IllegalMoveException {
+		// 549946 nodes in the full game tree
+		assertEquals(549946, walk(new Game()));
+	}
+
+	@Test
+	public void testMovesKeepBoardInSync() throws IllegalMoveException {
+		Game g = new Game();
+		g.executeMove('X', 1, 1);
+		Game next = g.simulateMove(new Move('O', 0, 0));
+		next.executeMove('X', 0, 2);
+		next.executeMove('O', 2, 2);
+		next.executeMove('X', 2, 0);
+
+		assertEquals('X', next.getBoard()[1][1]);
+		assertEquals('O', next.getBoard()[0][0]);
+		assertEquals(' ', g.getBoard()[0][0]);
+		assertEquals(Game.X_WON, next.getState());
+		assertEquals(0, next.getPossibleMoves().size());
+		assertTrue(!g.isLegal(new Move('O', 1, 1)));
+
+		// writing to the board directly is picked up by evaluateGameState()
+		Game h = new Game();
+		h.getBoard()[0][0] = 'O';
+		h.getBoard()[1][1] = 'O';
+		h.getBoard()[2][2] = 'O';
+		assertEquals(Game.O_WON, h.evaluateGameState());
+	}
+
+	@Test
+	public void testLargerBoard() throws IllegalMoveException {
+		BoardShape shape = new BoardShape(4, 4, 4);
+		Game g = new Game(shape);
+		assertEquals(16, g.getPossibleMoves().size());
+		assertTrue(!new Game().isLegal(new Move('X', 3, 3)));
+		assertTrue(g.isLegal(new Move('X', 3, 3)));
+
+		// X on the anti-diagonal, O on the top row
+		int[][] moves = { { 3, 0 }, { 0, 0 }, { 2, 1 }, { 0, 1 }, { 1, 2 }, { 0, 2 } };
+		for (int[] m : moves)
+			g.executeMove(g.getPossibleMoves().get(0).getMark(), m[0], m[1]);
+		assertEquals(Game.ONGOING, g.getState());
+		assertTrue(g.isWinningMove('X', shape.cell(0, 3)));
+		assertTrue(g.isWinningMove('O', shape.cell(0, 3)));
+		assertTrue(!g.isWinningMove('X', shape.cell(3, 3)));
+
+		Game before = g.clone();
+		g.makeMove(shape.cell(0, 3));
+		assertEquals(Game.X_WON, g.getState());
+		assertEquals('X', g.getBoard()[0][3]);
+		g.unmakeMove(shape.cell(0, 3));
+		assertEquals(before, g);
+		assertEquals(before.hashCode(), g.hashCode());
+		assertEquals(Game.ONGOING, g.getState());
+
+		g.executeMove('X', 3, 3);
+		g.executeMove('O', 0, 3);
+		assertEquals(Game.O_WON, g.getState());
+		assertTrue(!g.equals(new Game()));
+	}
+
+	static void collectReachableGames(Game g, Set<Game> seen) {
+		if (!seen.add(g) || g.isTerminal())
+			return;
+		for (Game next : g.getAllSuccessorGames())
+			collectReachableGames(next, seen);
+	}
+
+	@Test
+	public void testCatalogOnOtherBoard() throws IllegalMoveException {
+		BoardShape shape = new BoardShape(3, 4, 3);
+		Set<Game> reachable = new HashSet<Game>();
+		Agent x = new Agent();
+		Agent o = new Agent();
+		collectReachableGames(new Game(shape, x, o, x), reachable);
+		collectReachableGames(new Game(shape, x, o, o), reachable);
+
+		StateCatalog catalog = StateCatalog.get(shape);
+		assertEquals(reachable.size(), catalog.size());
+		assertSame(catalog, StateCatalog.get(new BoardShape(3, 4, 3)));
+		for (Game g : reachable) {
+			int id = catalog.id(g);
+			assertTrue(id >= 0);
+			assertEquals(g, catalog.game(id));
+			assertEquals(g.getState(), catalog.status(id));
+			assertEquals(g.getLegalMoves(), catalog.legalMoves(id));
+			for (Move m : g.getPossibleMoves())
+				assertSame(catalog.intern(g.simulateMove(m)), catalog.game(catalog.successor(id, shape.cell(m))));
+		}
+		assertEquals(-1, catalog.id(new Game()));
+
+		TTTMDP mdp = new TTTMDP(shape);
+		Game g = new Game(shape);
+		double total = 0;
+		for (TransitionProb t : mdp.generateTransitions(g, new Move('X', 2, 3)))
+			total += t.prob;
+		assertEquals(1.0, total, 1e-9);
+	}
+
+	@Test
+	public void testPositionsMatchGames() throws IllegalMoveException {
+		for (int h = 0; h < Game.NUM_HASHES; h++) {
+			Position p = Position.inverseHash(h);
+			if (p == null)
+				continue;
+			Game g = Game.inverseHash(h);
+			assertEquals(h, p.hashCode());
+			assertEquals(p, g.getPosition());
+			assertEquals(g.evaluateGameState(), p.getState());
+			assertEquals(g.getPossibleMoves(), p.getPossibleMoves());
+			assertTrue(!p.equals(g));
+		}
+
+		StateCatalog catalog = StateCatalog.get();
+		for (int id = 0; id < catalog.size(); id++) {
+			Position p = catalog.position(id);
+			assertSame(p, catalog.game(id).getPosition());
+			assertEquals(id, catalog.id(p));
+			assertEquals(p, new Game(p, new Agent(), new Agent()).getPosition());
+			for (Move m : p.getPossibleMoves())
+				assertSame(catalog.position(catalog.successor(id, m.getCell())), catalog.intern(catalog.game(id).simulateMove(m)).getPosition());
+		}
+
+		Position p = Position.start('X').play(4).play(Move.of('O', 0, 0));
+		Game g = new Game();
+		g.executeMove('X', 1, 1);
+		g.executeMove('O', 0, 0);
+		assertEquals(g.getPosition(), p);
+		assertEquals('X', p.whoseTurn());
+		assertEquals('O', p.at(0, 0));
+	}
+
+	@Test
+	public void testTransitionsCache() throws IllegalMoveException {
+		TTTMDP mdp = new TTTMDP();
+		TTTMDP cached = new TTTMDP();
+		cached.setCacheSize(2);
+
+		Game g = new Game();
+		Move[] moves = { Move.of('X', 0), Move.of('X', 4), Move.of('X', 8), Move.of('X', 8), Move.of('X', 0) };
+		for (Move m : moves) {
+			List<TransitionProb> expected = mdp.generateTransitions(g, m);
+			List<TransitionProb> actual = cached.generateTransitions(g, m);
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertSame(expected.get(i).outcome.sPrime, actual.get(i).outcome.sPrime);
+				assertEquals(expected.get(i).prob, actual.get(i).prob, 0);
+				assertEquals(expected.get(i).outcome.localReward, actual.get(i).outcome.localReward, 0);
+			}
+		}
+		// the first move was dropped to make room for the third
+		assertEquals(1L, cached.getCacheHits());
+		assertEquals(4L, cached.getCacheMisses());
+		assertEquals(2, cached.getCacheSize());
+		assertSame(cached.generateTransitions(g, Move.of('X', 0)), cached.generateTransitions(g.clone(), Move.of('X', 0)));
+
+		try {
+			cached.generateTransitions(g, Move.of('X', 0)).clear();
+			assertTrue(false);
+		} catch (UnsupportedOperationException e) {
+		}
+
+		cached.setCacheSize(0);
+		assertEquals(0, cached.getCacheSize());
+		assertTrue(cached.generateTransitions(g, Move.of('X', 0)) != cached.generateTransitions(g, Move.of('X', 0)));
+	}
+
+	@Test
+	public void testTransitionBuffer() throws IllegalMoveException {
+		TTTMDP mdp = new TTTMDP();
+		StateCatalog catalog = StateCatalog.get();
+		TransitionBuffer buffer = new TransitionBuffer(BoardShape.STANDARD);
+		for (Position p : catalog.positionsToMove('X')) {
+			for (Move m : p.getPossibleMoves()) {
+				List<TransitionProb> expected = mdp.generateTransitions(p, m);
+				assertEquals(expected.size(), mdp.generateTransitions(p, m, buffer));
+				for (int i = 0; i < expected.size(); i++) {
+					Game next = expected.get(i).outcome.sPrime;
+					assertEquals(next.getPosition(), buffer.position(i));
+					assertEquals(next.hashCode(), buffer.hash(i));
+					assertEquals(catalog.id(next), buffer.id(i, catalog));
+					assertEquals(next.getState(), buffer.state(i));
+					assertEquals(expected.get(i).prob, buffer.prob(i), 0);
+					assertEquals(expected.get(i).outcome.localReward, buffer.reward(i), 0);
+				}
+			}
+			// over, or the cell is taken
+			if (p.isTerminal())
+				assertEquals(0, mdp.generateTransitions(p.getXBits(), p.getOBits(), 0, buffer));
+		}
+		assertEquals(0, mdp.generateTransitions(1, 0, 0, buffer));
+
+		// a board far too large to enumerate
+		BoardShape shape = new BoardShape(7, 7, 5);
+		TTTMDP large = new TTTMDP(shape);
+		TransitionBuffer largeBuffer = new TransitionBuffer(shape);
+		assertEquals(48, large.generateTransitions(0, 0, shape.cell(3, 3), largeBuffer));
+		double total = 0;
+		for (int i = 0; i < largeBuffer.size(); i++)
+			total += largeBuffer.prob(i);
+		assertEquals(1.0, total, 1e-9);
+	}
+
+}
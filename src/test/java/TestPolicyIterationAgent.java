@@ -8,11 +8,13 @@ import org.junit.Test;
 
 import ticTacToe.Agent;
 import ticTacToe.AggressiveAgent;
+import ticTacToe.BackwardInductionAgent;
 import ticTacToe.DefensiveAgent;
 import ticTacToe.Game;
 import ticTacToe.IllegalMoveException;
 import ticTacToe.PolicyIterationAgent;
 import ticTacToe.RandomAgent;
+import ticTacToe.TTTMDP;
 
 public class TestPolicyIterationAgent {
 
@@ -112,4 +114,44 @@ public class TestPolicyIterationAgent {
 
 	}
 
+	@Test
+	public void testSymmetric() {
+		System.out.println("Symmetric agent against Defensive, Aggressive and Random Agents:");
+		Agent agent=new PolicyIterationAgent(0.9, true);
+		int[] results=playAgainstEachOther(agent, new DefensiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=playAgainstEachOther(agent, new AggressiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=playAgainstEachOther(agent, new RandomAgent(), 50);
+		assertEquals(0, results[1]);
+
+	}
+
+	@Test
+	public void testEvaluation() {
+		TTTMDP mdp=new TTTMDP();
+		// exact evaluation converges to the optimal policy, the one backward induction finds
+		Agent exact=new PolicyIterationAgent(mdp, 0.9, PolicyIterationAgent.EXACT);
+		Agent optimal=new BackwardInductionAgent(mdp, 0.9);
+		for (Game g: Game.generateAllValidGames('X'))
+			assertEquals(optimal.getPolicy().getMove(g), exact.getPolicy().getMove(g));
+
+		Agent modified=new PolicyIterationAgent(mdp, 0.9, 2);
+		int[] results=playAgainstEachOther(modified, new DefensiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=playAgainstEachOther(modified, new RandomAgent(), 50);
+		assertEquals(0, results[1]);
+	}
+
+	@Test
+	public void testParallel() {
+		TTTMDP mdp=new TTTMDP();
+		Agent one=new PolicyIterationAgent(mdp, 0.9, PolicyIterationAgent.EXACT, 1);
+		Agent four=new PolicyIterationAgent(mdp, 0.9, PolicyIterationAgent.EXACT, 4);
+		for (Game g: Game.generateAllValidGames('X'))
+			assertEquals(one.getPolicy().getMove(g), four.getPolicy().getMove(g));
+		int[] results=playAgainstEachOther(four, new DefensiveAgent(), 50);
+		assertEquals(0, results[1]);
+	}
+
 }
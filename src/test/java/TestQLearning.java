@@ -1,14 +1,33 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import org.junit.Before;
 import org.junit.Test;
 
+import ticTacToe.Agent;
 import ticTacToe.AggressiveAgent;
 import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
+import ticTacToe.IllegalMoveException;
+import ticTacToe.Move;
 import ticTacToe.QLearningAgent;
+import ticTacToe.QTable;
 import ticTacToe.RandomAgent;
+import ticTacToe.Rng;
+import ticTacToe.StateCatalog;
+import ticTacToe.StepOutcome;
+import ticTacToe.TTTEnvironment;
+import ticTacToe.VectorTTTEnvironment;
 import ticTacToe.ValueIterationAgent;
 
 public class TestQLearning {
+	@Before
+	public void seed() {
+		// the agents and opponents all get their generators from the root one, so every run plays the same games
+		Rng.setSeed(20);
+	}
+	
 	@Test
 	public void testDefensive() {
 		System.out.println("Against Defensive Agent:");
@@ -42,4 +61,136 @@ public class TestQLearning {
 
 	}
 
+	@Test
+	public void testSymmetric() {
+		System.out.println("Symmetric agent against Defensive, Aggressive and Random Agents:");
+		Agent agent=new QLearningAgent(new RandomAgent(), 0.1, 30000, 0.9, true);
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new DefensiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=TestPolicyIterationAgent.playAgainstEachOther(agent, new AggressiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=TestPolicyIterationAgent.playAgainstEachOther(agent, new RandomAgent(), 50);
+		assertEquals(0, results[1]);
+
+	}
+
+	@Test
+	public void testQTable() {
+		QTable table=new QTable();
+		Game g=new Game();
+		Move m=Move.of('X', 1, 2);
+		assertNull(table.getQValue(g, m));
+		table.addQValue(g, m, 2.5);
+		// the same cell of the same game, however it is looked up
+		assertEquals(2.5, table.getQValue(g.getPosition(), m), 0);
+		assertEquals(2.5, table.get(StateCatalog.get().id(g), 5), 0);
+		assertTrue(table.has(StateCatalog.get().id(g), 5));
+		assertNull(table.getQValue(g, Move.of('X', 0, 0)));
+		table.addQValue(g, m, null);
+		assertNull(table.getQValue(g, m));
+	}
+
+	@Test
+	public void testParallel() {
+		System.out.println("Symmetric agent trained on 4 threads against Defensive, Aggressive and Random Agents:");
+		long start=System.nanoTime();
+		Agent agent=new QLearningAgent(new RandomAgent(), 0.1, 150000, 0.9, true, 4);
+		System.out.println("150000 episodes in " + (System.nanoTime()-start)/1000000 + " ms");
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new DefensiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=TestPolicyIterationAgent.playAgainstEachOther(agent, new AggressiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=TestPolicyIterationAgent.playAgainstEachOther(agent, new RandomAgent(), 50);
+		assertEquals(0, results[1]);
+	}
+
+	@Test
+	public void testEnvironmentSteps() throws IllegalMoveException {
+		TTTEnvironment env=new TTTEnvironment();
+		StateCatalog catalog=StateCatalog.get();
+		StepOutcome outcome=new StepOutcome();
+		Game start=new Game();
+		for (int episode=0; episode<20; episode++) {
+			env.reset();
+			assertEquals(catalog.id(start), env.getStateId());
+			int s=env.getStateId();
+			while (!env.isTerminal()) {
+				int cell=Long.numberOfTrailingZeros(env.getLegalMoves());
+				env.step(cell, outcome);
+				assertEquals(s, outcome.s);
+				assertEquals(cell, outcome.cell);
+				assertEquals(env.getStateId(), outcome.sPrime);
+				assertEquals(env.getCurrentGameState().hashCode(), outcome.sPrimeHash);
+				assertEquals(env.isTerminal(), outcome.done);
+				// X's move, and the reply unless X's move ended the game
+				assertTrue(catalog.successor(s, cell)==outcome.sPrime || catalog.successor(catalog.successor(s, cell),
+						Long.numberOfTrailingZeros(catalog.position(outcome.sPrime).getOBits() & ~catalog.position(s).getOBits()))==outcome.sPrime);
+				s=outcome.sPrime;
+			}
+			try {
+				env.step(0, outcome);
+				assertTrue(false);
+			} catch (IllegalStateException e) {
+			}
+		}
+		env.reset();
+		env.step(4, outcome);
+		try {
+			env.step(4, outcome);
+			assertTrue(false);
+		} catch (IllegalMoveException e) {
+		}
+	}
+
+	@Test
+	public void testVectorEnvironment() {
+		VectorTTTEnvironment env=new VectorTTTEnvironment(16);
+		StateCatalog catalog=env.getCatalog();
+		int start=catalog.id(new Game());
+		int[] actions=new int[env.size()];
+		int[] states=new int[env.size()];
+		int[] next=new int[env.size()];
+		double[] rewards=new double[env.size()];
+		boolean[] dones=new boolean[env.size()];
+		Rng random=new Rng(1);
+		int finished=0;
+		for (int step=0; step<200; step++) {
+			env.stateIds(states);
+			for (int i=0; i<env.size(); i++) {
+				// a random free cell
+				actions[i]=random.nextCell(env.legalMoves(i));
+			}
+			env.step(actions, rewards, next, dones);
+			for (int i=0; i<env.size(); i++) {
+				int after=catalog.successor(states[i], actions[i]);
+				assertEquals(catalog.isTerminal(next[i]), dones[i]);
+				if (dones[i]) {
+					finished++;
+					assertEquals(start, env.stateId(i));
+					int state=catalog.status(next[i]);
+					assertEquals(state==Game.X_WON ? 10.0 : state==Game.O_WON ? -50.0 : 0.0, rewards[i], 0);
+				} else {
+					assertEquals(next[i], env.stateId(i));
+					assertEquals(-1.0, rewards[i], 0);
+				}
+				// X's move, then the reply unless X's move ended the game
+				if (next[i]!=after)
+					assertEquals(next[i], catalog.successor(after,
+							Long.numberOfTrailingZeros(catalog.position(next[i]).getOBits() & ~catalog.position(after).getOBits())));
+				assertEquals(catalog.position(env.stateId(i)).getXBits(), env.xBits(i));
+			}
+		}
+		// games last at most 5 steps, so most of them have been played out
+		assertTrue(finished>=16*200/5);
+	}
+	
+	@Test
+	public void testReproducible() {
+		Agent first=new QLearningAgent(new RandomAgent(new Rng(5)), 0.1, 5000, 0.9, false, 1, new Rng(7));
+		Agent second=new QLearningAgent(new RandomAgent(new Rng(5)), 0.1, 5000, 0.9, false, 1, new Rng(7));
+		StateCatalog catalog=StateCatalog.get();
+		for (int id=0; id<catalog.size(); id++)
+			if (catalog.isXsTurn(id) && !catalog.isTerminal(id))
+				assertEquals(first.getPolicy().getMove(catalog.position(id)), second.getPolicy().getMove(catalog.position(id)));
+	}
 }
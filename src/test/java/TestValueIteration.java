@@ -1,10 +1,21 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
 
 import org.junit.Test;
 
+import ticTacToe.Agent;
 import ticTacToe.AggressiveAgent;
+import ticTacToe.BackwardInductionAgent;
+import ticTacToe.CompiledMDP;
 import ticTacToe.DefensiveAgent;
+import ticTacToe.Game;
+import ticTacToe.Position;
+import ticTacToe.PrioritizedSweepingAgent;
 import ticTacToe.RandomAgent;
+import ticTacToe.TTTMDP;
+import ticTacToe.ValueFunction;
 import ticTacToe.ValueIterationAgent;
 
 public class TestValueIteration {
@@ -41,4 +52,109 @@ public class TestValueIteration {
 
 	}
 
+	@Test
+	public void testSymmetric() {
+		System.out.println("Symmetric agent against Defensive, Aggressive and Random Agents:");
+		Agent agent=new ValueIterationAgent(0.9, true);
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(agent, new DefensiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=TestPolicyIterationAgent.playAgainstEachOther(agent, new AggressiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=TestPolicyIterationAgent.playAgainstEachOther(agent, new RandomAgent(), 50);
+		assertEquals(0, results[1]);
+
+	}
+
+	@Test
+	public void testParallel() {
+		TTTMDP mdp=new TTTMDP();
+		ValueIterationAgent two=new ValueIterationAgent(mdp, 0.9, 2);
+		ValueIterationAgent four=new ValueIterationAgent(mdp, 0.9, 4);
+		// synchronous sweeps give the same values however many threads run them
+		assertEquals(two.getResidual(), four.getResidual(), 0);
+		for (Game g: Game.generateAllValidGames('X'))
+			assertEquals(two.getPolicy().getMove(g), four.getPolicy().getMove(g));
+
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(four, new RandomAgent(), 50);
+		assertEquals(0, results[1]);
+	}
+
+	@Test
+	public void testConvergence() {
+		TTTMDP mdp=new TTTMDP();
+		ValueIterationAgent gaussSeidel=new ValueIterationAgent(mdp, 0.9, 1e-6, 50, true);
+		ValueIterationAgent jacobi=new ValueIterationAgent(mdp, 0.9, 1e-6, 50, false);
+		System.out.println("Gauss-Seidel: " + gaussSeidel.getSweeps() + " sweeps, Jacobi: " + jacobi.getSweeps() + " sweeps");
+		assertTrue(gaussSeidel.getResidual()<=1e-6);
+		assertTrue(jacobi.getResidual()<=1e-6);
+		assertTrue(jacobi.getSweeps()<50);
+		// in place, the values of later states are already up to date, so it takes fewer sweeps
+		assertTrue(gaussSeidel.getSweeps()<jacobi.getSweeps());
+		for (Game g: Game.generateAllValidGames('X'))
+			assertEquals(gaussSeidel.getPolicy().getMove(g), jacobi.getPolicy().getMove(g));
+
+		// the cap still stops it
+		ValueIterationAgent capped=new ValueIterationAgent(mdp, 0.9, 0, 1, false);
+		assertEquals(1, capped.getSweeps());
+		assertTrue(capped.getResidual()>0);
+	}
+
+	@Test
+	public void testPrioritizedSweeping() {
+		TTTMDP mdp=new TTTMDP();
+		ValueIterationAgent sweeping=new ValueIterationAgent(mdp, 0.9, 0, 50, false);
+		PrioritizedSweepingAgent prioritized=new PrioritizedSweepingAgent(mdp, 0.9, 0);
+		System.out.println("Prioritized sweeping: " + prioritized.getBackups() + " backups, value iteration: "
+				+ sweeping.getSweeps() + " sweeps of " + mdp.compile().getStates().length + " states");
+		assertEquals(0, prioritized.getResidual(), 0);
+		// both reach the exact values, so they pick the same moves
+		for (Game g: Game.generateAllValidGames('X'))
+			assertEquals(sweeping.getPolicy().getMove(g), prioritized.getPolicy().getMove(g));
+		assertTrue(prioritized.getBackups()<(long) sweeping.getSweeps()*mdp.compile().getStates().length);
+
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(new PrioritizedSweepingAgent(), new DefensiveAgent(), 50);
+		assertEquals(0, results[1]);
+	}
+
+	@Test
+	public void testBackwardInduction() {
+		TTTMDP mdp=new TTTMDP();
+		ValueIterationAgent converged=new ValueIterationAgent(mdp, 0.9, 0, 50, false);
+		BackwardInductionAgent exact=new BackwardInductionAgent(mdp, 0.9);
+		for (Game g: Game.generateAllValidGames('X'))
+			assertEquals(converged.getPolicy().getMove(g), exact.getPolicy().getMove(g));
+
+		Agent symmetric=new BackwardInductionAgent(mdp, 0.9, true);
+		int[] results=TestPolicyIterationAgent.playAgainstEachOther(symmetric, new DefensiveAgent(), 50);
+		assertEquals(0, results[1]);
+		results=TestPolicyIterationAgent.playAgainstEachOther(symmetric, new RandomAgent(), 50);
+		assertEquals(0, results[1]);
+	}
+
+	@Test
+	public void testValueFunctionView() {
+		TTTMDP mdp=new TTTMDP();
+		CompiledMDP model=mdp.compile();
+		ValueFunction values=new ValueFunction(model);
+		Map<Position, Double> view=values.asMap();
+		assertEquals(model.getStates().length, view.size());
+
+		Position start=Position.start('X');
+		int id=model.getCatalog().id(start);
+		values.set(id, 0.5);
+		assertEquals(0.5, view.get(start), 0);
+		// O to move isn't a state of the model
+		assertEquals(null, view.get(Position.start('O')));
+		int seen=0;
+		for (Map.Entry<Position, Double> e: view.entrySet())
+			if (e.getKey().equals(start))
+				seen++;
+		assertEquals(1, seen);
+		try {
+			view.put(start, 1.0);
+			assertTrue(false);
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
 }